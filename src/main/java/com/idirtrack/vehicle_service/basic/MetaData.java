@@ -13,4 +13,7 @@ public class MetaData {
     private Integer currentPage;
     private Integer totalPages;
     private Integer size;
+    private Boolean hasNext;
+    // Opaque cursor of the next slice in keyset mode, null on the last slice
+    private String nextCursor;
 }
@@ -16,6 +16,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
@@ -33,7 +34,7 @@ import lombok.ToString;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "boitiers")
+@Table(name = "boitiers", indexes = @Index(name = "idx_boitiers_vehicle_id", columnList = "vehicle_id"))
 public class Boitier {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
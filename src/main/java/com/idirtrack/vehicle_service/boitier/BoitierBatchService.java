@@ -0,0 +1,490 @@
+package com.idirtrack.vehicle_service.boitier;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.basic.MessageType;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierIdsResolution;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierOwnership;
+import com.idirtrack.vehicle_service.boitier.https.BoitierImportItemResponse;
+import com.idirtrack.vehicle_service.boitier.https.BoitierRequest;
+import com.idirtrack.vehicle_service.cache.CountCache;
+import com.idirtrack.vehicle_service.device.DeviceDTO;
+import com.idirtrack.vehicle_service.device.DeviceRepository;
+import com.idirtrack.vehicle_service.device.DeviceService;
+import com.idirtrack.vehicle_service.outbox.StockStatusOutbox;
+import com.idirtrack.vehicle_service.sim.SimDTO;
+import com.idirtrack.vehicle_service.sim.SimRepository;
+import com.idirtrack.vehicle_service.sim.SimService;
+import com.idirtrack.vehicle_service.stock.StockItemType;
+import com.idirtrack.vehicle_service.subscription.SubscriptionDTO;
+import com.idirtrack.vehicle_service.subscription.SubscriptionRepository;
+import com.idirtrack.vehicle_service.utils.Error;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service for provisioning and importing many boitiers in one request.
+ *
+ * Unlike {@link BoitierService#createNewBoitier(BoitierRequest)}, which saves
+ * the device, sim, boitier and subscription of one boitier with four inserts,
+ * this service validates the whole batch with set-based queries, fetches the
+ * stock data with bounded concurrency, and inserts the boitiers with JDBC
+ * batches, see {@link BoitierBatchWriter}. A batch is created entirely or
+ * not at all, an import creates its valid boitiers and reports the others.
+ * The boitiers of a decommission are deleted with set-based statements.
+ */
+@Service
+public class BoitierBatchService {
+
+        @Autowired
+        private BoitierRepository boitierRepository;
+
+        @Autowired
+        private DeviceRepository deviceRepository;
+
+        @Autowired
+        private SimRepository simRepository;
+
+        @Autowired
+        private SubscriptionRepository subscriptionRepository;
+
+        @Autowired
+        private DeviceService deviceService;
+
+        @Autowired
+        private SimService simService;
+
+        @Autowired
+        private BoitierBatchWriter boitierBatchWriter;
+
+        @Autowired
+        private StockStatusOutbox stockStatusOutbox;
+
+        @Autowired
+        private CountCache countCache;
+
+        @Autowired
+        private TransactionTemplate transactionTemplate;
+
+        @Value("${boitier.batch.max-size:1000}")
+        private int maxSize;
+
+        @Value("${boitier.import.max-size:10000}")
+        private int importMaxSize;
+
+        @Value("${boitier.batch.max-concurrency:16}")
+        private int maxConcurrency;
+
+        /**
+         * Create a batch of boitiers.
+         *
+         * This method performs the following steps:
+         * 1. Checks the dates of each boitier, the devices and sims repeated in the
+         * batch, and the devices and sims already used with one IN query each.
+         * 2. Fetches the devices and sims from the stock microservice, at most
+         * {@code boitier.batch.max-concurrency} lookups at once.
+         * 3. Inserts the devices, sims, boitiers and subscriptions with one JDBC batch
+         * per table, and records the pending status of the devices and sims for the
+         * stock microservice, in one transaction.
+         *
+         * @param requests the boitiers to create
+         * @return a {@link BasicResponse} with the created boitiers, in the order of
+         *         the request
+         * @throws BasicException if the batch is too large or a boitier is invalid,
+         *                        with the errors of all the boitiers
+         */
+        public BasicResponse createBoitiersBatch(List<BoitierRequest> requests) throws BasicException {
+                checkSize(requests, maxSize);
+
+                // Validate the boitiers against the database and each other
+                List<BoitierRow> rows = validate(requests, false);
+                if (rows.stream().anyMatch(BoitierRow::isFailed)) {
+                        throw failure(rows);
+                }
+
+                // Fetch the devices and the sims from the stock microservice
+                fetchStock(rows);
+                if (rows.stream().anyMatch(BoitierRow::isFailed)) {
+                        throw failure(rows);
+                }
+
+                // Insert the boitiers and record the status changes in one transaction
+                List<BoitierDTO> boitiers = rows.stream().map(row -> row.boitier).collect(Collectors.toList());
+                insert(boitiers);
+
+                return BasicResponse.builder()
+                                .content(boitiers)
+                                .message(boitiers.size() + " boitiers created successfully")
+                                .messageType(MessageType.INFO)
+                                .status(HttpStatus.CREATED)
+                                .build();
+        }
+
+        /**
+         * Import boitiers, with a report of each boitier.
+         *
+         * Same steps as {@link #createBoitiersBatch(List)}, but the invalid boitiers
+         * do not stop the import: the valid ones are created and every boitier gets
+         * its own result. The fields are not validated before, a boitier with a
+         * missing field is reported like any other invalid boitier.
+         *
+         * @param requests the boitiers to import, from the JSON or CSV file
+         * @return a {@link BasicResponse} with one {@link BoitierImportItemResponse}
+         *         per boitier, in the order of the file
+         * @throws BasicException if the file has more than the allowed rows
+         */
+        public BasicResponse importBoitiers(List<BoitierRequest> requests) throws BasicException {
+                checkSize(requests, importMaxSize);
+
+                // Validate the boitiers, and fetch the stock of the valid ones only
+                List<BoitierRow> rows = validate(requests, true);
+                fetchStock(rows);
+
+                // Insert the valid boitiers and record the status changes in one transaction
+                insert(rows.stream().filter(row -> !row.isFailed()).map(row -> row.boitier)
+                                .collect(Collectors.toList()));
+
+                // Report the result of each boitier
+                List<BoitierImportItemResponse> results = rows.stream()
+                                .map(row -> row.isFailed()
+                                                ? BoitierImportItemResponse.builder()
+                                                                .index(row.index)
+                                                                .deviceMicroserviceId(row.request.getDeviceMicroserviceId())
+                                                                .simMicroserviceId(row.request.getSimMicroserviceId())
+                                                                .status(row.stockUnavailable
+                                                                                ? HttpStatus.INTERNAL_SERVER_ERROR
+                                                                                : HttpStatus.BAD_REQUEST)
+                                                                .messageType(MessageType.ERROR)
+                                                                .message(row.errors.get(0).getMessage())
+                                                                .errorsList(row.errors)
+                                                                .build()
+                                                : BoitierImportItemResponse.builder()
+                                                                .index(row.index)
+                                                                .deviceMicroserviceId(row.request.getDeviceMicroserviceId())
+                                                                .simMicroserviceId(row.request.getSimMicroserviceId())
+                                                                .boitierId(row.boitier.getId())
+                                                                .status(HttpStatus.CREATED)
+                                                                .messageType(MessageType.INFO)
+                                                                .message("Boitier created successfully")
+                                                                .build())
+                                .collect(Collectors.toList());
+
+                long created = rows.stream().filter(row -> !row.isFailed()).count();
+                return BasicResponse.builder()
+                                .content(results)
+                                .message(created + " of " + requests.size() + " boitiers imported")
+                                .messageType(created == requests.size() ? MessageType.INFO : MessageType.WARNING)
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
+        /**
+         * Decommission boitiers, in one transaction.
+         *
+         * Unlike {@link BoitierService#deleteBoitierById(Long, boolean)}, which
+         * reads and deletes the rows of one boitier one by one, this method performs
+         * the following steps:
+         * 1. Resolves the boitiers with their device and sim in one query, the whole
+         * batch is rejected if one of them does not exist.
+         * 2. Deletes the subscriptions, the boitiers, the devices and the sims with one
+         * DELETE ... WHERE id IN statement per table.
+         * 3. Records the lost or non installed status of the devices and sims for the
+         * stock microservice with multi-row inserts.
+         *
+         * @param boitierIds the boitiers to decommission
+         * @param isLost     whether the boitiers are lost, otherwise their devices and
+         *                   sims return to the stock
+         * @return a {@link BasicResponse} with the number of deleted boitiers
+         * @throws BasicException if the batch is too large or a boitier is not found
+         */
+        public BasicResponse decommissionBoitiers(List<Long> boitierIds, boolean isLost) throws BasicException {
+                checkSize(boitierIds, maxSize);
+
+                // Find the boitiers with their device and sim in one query
+                BoitierIdsResolution resolution = boitierRepository.resolveIds(boitierIds);
+                if (!resolution.getMissing().isEmpty()) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("Boitier not found")
+                                        .messageType(MessageType.ERROR)
+                                        .errorsList(resolution.getMissing().stream()
+                                                        .map(id -> Error.builder().key("boitiersIds")
+                                                                        .message("Boitier " + id + " not found").build())
+                                                        .collect(Collectors.toList()))
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .build());
+                }
+                List<BoitierOwnership> boitiers = resolution.getFound();
+
+                // Delete the rows and record the status changes in one transaction
+                transactionTemplate.executeWithoutResult(status -> {
+                        // Delete the subscriptions and the boitiers before their devices and sims
+                        subscriptionRepository.deleteAllByBoitierIds(resolution.getFoundIds());
+                        boitierRepository.deleteAllByIdInBatch(resolution.getFoundIds());
+                        deviceRepository.deleteAllByIdInBatch(boitiers.stream().map(BoitierOwnership::getDeviceId)
+                                        .filter(Objects::nonNull).collect(Collectors.toList()));
+                        simRepository.deleteAllByIdInBatch(boitiers.stream().map(BoitierOwnership::getSimId)
+                                        .filter(Objects::nonNull).collect(Collectors.toList()));
+
+                        // Chnage the status of the devices and sims to lost in stock microservice, or return
+                        // them to the stock by setting them to not installed
+                        String stockStatus = isLost ? "lost" : "non_installed";
+                        stockStatusOutbox.statusesChanged(StockItemType.DEVICE, boitiers.stream()
+                                        .map(BoitierOwnership::getDeviceMicroserviceId).filter(Objects::nonNull)
+                                        .collect(Collectors.toList()), stockStatus);
+                        stockStatusOutbox.statusesChanged(StockItemType.SIM, boitiers.stream()
+                                        .map(BoitierOwnership::getSimMicroserviceId).filter(Objects::nonNull)
+                                        .collect(Collectors.toList()), stockStatus);
+                });
+
+                // The boitiers counts changed
+                countCache.invalidate(CountCache.BOITIERS);
+
+                return BasicResponse.builder()
+                                .message(boitiers.size() + " boitiers deleted successfully")
+                                .messageType(MessageType.INFO)
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
+        private void checkSize(List<?> requests, int max) throws BasicException {
+                if (requests.size() > max) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("A batch can not contain more than " + max + " boitiers")
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .build());
+                }
+        }
+
+        /**
+         * Check the fields and dates of each boitier, and the devices and sims
+         * repeated in the batch or already used in another boitier
+         *
+         * @param validOnly true if only the valid boitiers reserve their device and
+         *                  sim, for an import where they are created anyway; false
+         *                  to report every repeated item of a batch that is rejected
+         *                  as a whole
+         * @return one row per boitier, with its errors
+         */
+        private List<BoitierRow> validate(List<BoitierRequest> requests, boolean validOnly) {
+                // Find the devices and sims already used, with one query each
+                Set<Long> usedDevices = new HashSet<>(deviceRepository.findExistingDeviceMicroserviceIds(
+                                requests.stream().filter(Objects::nonNull)
+                                                .map(BoitierRequest::getDeviceMicroserviceId)
+                                                .filter(Objects::nonNull)
+                                                .collect(Collectors.toSet())));
+                Set<Long> usedSims = new HashSet<>(simRepository.findExistingSimMicroserviceIds(
+                                requests.stream().filter(Objects::nonNull)
+                                                .map(BoitierRequest::getSimMicroserviceId)
+                                                .filter(Objects::nonNull)
+                                                .collect(Collectors.toSet())));
+
+                java.util.Date now = new java.util.Date();
+                List<BoitierRow> rows = new ArrayList<>();
+                for (int i = 0; i < requests.size(); i++) {
+                        // A null boitier of the file is reported like a boitier without fields
+                        BoitierRow row = new BoitierRow(i,
+                                        requests.get(i) == null ? new BoitierRequest() : requests.get(i));
+                        BoitierRequest request = row.request;
+                        rows.add(row);
+                        if (requests.get(i) == null) {
+                                row.error("Boitier is required");
+                                continue;
+                        }
+
+                        if (request.getDeviceMicroserviceId() == null) {
+                                row.error("device", "Stock Microservice ID is required");
+                        } else if (usedDevices.contains(request.getDeviceMicroserviceId())) {
+                                row.error("device", "Device already used in another boitier");
+                        }
+                        if (request.getSimMicroserviceId() == null) {
+                                row.error("sim", "Stock Microservice ID is required");
+                        } else if (usedSims.contains(request.getSimMicroserviceId())) {
+                                row.error("sim", "Sim already used in another boitier");
+                        }
+                        if (request.getStartDate() == null || request.getEndDate() == null) {
+                                row.error(request.getStartDate() == null ? "startDate" : "endDate",
+                                                request.getStartDate() == null ? "Start date is required"
+                                                                : "End date is required");
+                        } else if (request.getStartDate().after(request.getEndDate())) {
+                                row.error("startDate", "Start date must be before the end date");
+                        } else if (request.getStartDate().before(now)) {
+                                row.error("startDate", "Start date must be after the current date");
+                        }
+
+                        // In an import only a valid boitier reserves its device and sim, so an
+                        // invalid one does not make the next boitiers with the same items fail
+                        if (!validOnly || !row.isFailed()) {
+                                if (request.getDeviceMicroserviceId() != null) {
+                                        usedDevices.add(request.getDeviceMicroserviceId());
+                                }
+                                if (request.getSimMicroserviceId() != null) {
+                                        usedSims.add(request.getSimMicroserviceId());
+                                }
+                        }
+                }
+                return rows;
+        }
+
+        /**
+         * Fetch the devices and sims of the valid rows from the stock microservice,
+         * and build their boitiers
+         */
+        private void fetchStock(List<BoitierRow> rows) {
+                List<BoitierRow> validRows = rows.stream().filter(row -> !row.isFailed()).collect(Collectors.toList());
+                Map<Long, Object> devices = lookup(validRows.stream()
+                                .map(row -> row.request.getDeviceMicroserviceId())
+                                .collect(Collectors.toList()), deviceService::getDeviceByIdFromMicroserviceAsync);
+                Map<Long, Object> sims = lookup(validRows.stream()
+                                .map(row -> row.request.getSimMicroserviceId())
+                                .collect(Collectors.toList()), simService::getSimByIdFromMicroserviceAsync);
+
+                // Build the boitiers, the stock DTOs are cached and shared, they are copied
+                for (BoitierRow row : validRows) {
+                        Object device = devices.get(row.request.getDeviceMicroserviceId());
+                        Object sim = sims.get(row.request.getSimMicroserviceId());
+                        if (device instanceof Throwable e) {
+                                row.lookupError("device", e);
+                        }
+                        if (sim instanceof Throwable e) {
+                                row.lookupError("sim", e);
+                        }
+                        if (device instanceof DeviceDTO deviceDTO && sim instanceof SimDTO simDTO) {
+                                row.boitier = BoitierDTO.builder()
+                                                .device(DeviceDTO.builder()
+                                                                .deviceMicroserviceId(deviceDTO.getDeviceMicroserviceId())
+                                                                .imei(deviceDTO.getImei())
+                                                                .type(deviceDTO.getType())
+                                                                .build())
+                                                .sim(SimDTO.builder()
+                                                                .simMicroserviceId(simDTO.getSimMicroserviceId())
+                                                                .phone(simDTO.getPhone())
+                                                                .operatorName(simDTO.getOperatorName())
+                                                                .ccid(simDTO.getCcid())
+                                                                .build())
+                                                .subscription(SubscriptionDTO.builder()
+                                                                .startDate(row.request.getStartDate())
+                                                                .endDate(row.request.getEndDate())
+                                                                .build())
+                                                .build();
+                        }
+                }
+        }
+
+        /**
+         * Look up the items in the stock microservice, at most maxConcurrency at once
+         *
+         * @return by id, the item found or the error of its lookup
+         */
+        private <T> Map<Long, Object> lookup(List<Long> ids, Function<Long, CompletableFuture<T>> lookup) {
+                Map<Long, Object> results = new ConcurrentHashMap<>();
+                Flux.fromIterable(ids)
+                                // The future is shared with the other lookups of the item, it is not cancelled
+                                .flatMap(id -> Mono.fromFuture(() -> lookup.apply(id), true)
+                                                .doOnNext(item -> results.put(id, item))
+                                                .onErrorResume(e -> {
+                                                        results.put(id, e);
+                                                        return Mono.empty();
+                                                }), maxConcurrency)
+                                .blockLast();
+                return results;
+        }
+
+        // Insert the boitiers and record the status changes in one transaction
+        private void insert(List<BoitierDTO> boitiers) {
+                if (boitiers.isEmpty()) {
+                        return;
+                }
+                transactionTemplate.executeWithoutResult(status -> {
+                        boitierBatchWriter.insertBoitiers(boitiers);
+
+                        // Change the status of the devices and sims to pending in the stock microservice
+                        stockStatusOutbox.statusesChanged(StockItemType.DEVICE, boitiers.stream()
+                                        .map(boitier -> boitier.getDevice().getDeviceMicroserviceId())
+                                        .collect(Collectors.toList()), "pending");
+                        stockStatusOutbox.statusesChanged(StockItemType.SIM, boitiers.stream()
+                                        .map(boitier -> boitier.getSim().getSimMicroserviceId())
+                                        .collect(Collectors.toList()), "pending");
+                });
+
+                // The boitiers counts changed
+                countCache.invalidate(CountCache.BOITIERS);
+        }
+
+        // The errors of all the rows, the stock errors first as they are not the client's
+        private BasicException failure(List<BoitierRow> rows) {
+                boolean stockUnavailable = rows.stream().anyMatch(row -> row.stockUnavailable);
+                return new BasicException(BasicResponse.builder()
+                                .message(stockUnavailable ? "Error while getting the boitiers from the stock"
+                                                : "Invalid boitiers")
+                                .messageType(MessageType.ERROR)
+                                .errorsList(rows.stream().flatMap(row -> row.errors.stream())
+                                                .collect(Collectors.toList()))
+                                .status(stockUnavailable ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.BAD_REQUEST)
+                                .build());
+        }
+
+        /**
+         * A boitier of the batch, with its errors or the boitier to insert
+         */
+        private static class BoitierRow {
+
+                private final int index;
+                private final BoitierRequest request;
+                private final List<Error> errors = new ArrayList<>();
+                private boolean stockUnavailable;
+                private BoitierDTO boitier;
+
+                BoitierRow(int index, BoitierRequest request) {
+                        this.index = index;
+                        this.request = request;
+                }
+
+                boolean isFailed() {
+                        return !errors.isEmpty();
+                }
+
+                void error(String message) {
+                        errors.add(Error.builder()
+                                        .key("boitiers[" + index + "]")
+                                        .message(message)
+                                        .build());
+                }
+
+                void error(String key, String message) {
+                        errors.add(Error.builder()
+                                        .key("boitiers[" + index + "]." + key)
+                                        .message(message)
+                                        .build());
+                }
+
+                // A missing item is the client's error, an unavailable stock is not
+                void lookupError(String key, Throwable e) {
+                        if (e instanceof BasicException basicException && basicException.getResponse() != null) {
+                                error(key, basicException.getResponse().getMessage());
+                        } else {
+                                stockUnavailable = true;
+                                error(key, "Error while getting the " + key + ": " + e.getMessage());
+                        }
+                }
+        }
+}
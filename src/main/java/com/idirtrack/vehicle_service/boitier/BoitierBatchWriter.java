@@ -0,0 +1,117 @@
+package com.idirtrack.vehicle_service.boitier;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
+
+/**
+ * Batched inserts of new boitiers with their device, sim and subscription.
+ *
+ * The tables use auto-increment ids, which stop Hibernate from batching the
+ * inserts, so the boitiers are written with JDBC batches instead: one batch per
+ * table for each chunk of boitiers, the ids generated by each batch are read
+ * back to fill the foreign keys of the next one. On MySQL, with
+ * rewriteBatchedStatements, each batch is sent as multi-row INSERT statements.
+ */
+@Repository
+public class BoitierBatchWriter {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${boitier.batch.insert-size:500}")
+    private int insertSize;
+
+    /**
+     * Insert the boitiers, their devices, sims and subscriptions, in the
+     * transaction of the caller
+     *
+     * @param boitiers the boitiers to insert, with their device, sim and
+     *                 subscription, the generated ids are set on them
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void insertBoitiers(List<BoitierDTO> boitiers) {
+        for (int from = 0; from < boitiers.size(); from += insertSize) {
+            List<BoitierDTO> chunk = boitiers.subList(from, Math.min(from + insertSize, boitiers.size()));
+
+            // Insert the devices and the sims
+            List<Long> deviceIds = insert(
+                    "INSERT INTO devices (device_microservice_id, imei, type) VALUES (?, ?, ?)",
+                    chunk, (ps, boitier) -> {
+                        ps.setObject(1, boitier.getDevice().getDeviceMicroserviceId());
+                        ps.setString(2, boitier.getDevice().getImei());
+                        ps.setString(3, boitier.getDevice().getType());
+                    });
+            List<Long> simIds = insert(
+                    "INSERT INTO sims (sim_microservice_id, phone, ccid, operator_name) VALUES (?, ?, ?, ?)",
+                    chunk, (ps, boitier) -> {
+                        ps.setObject(1, boitier.getSim().getSimMicroserviceId());
+                        ps.setString(2, boitier.getSim().getPhone());
+                        ps.setString(3, boitier.getSim().getCcid());
+                        ps.setString(4, boitier.getSim().getOperatorName());
+                    });
+            for (int i = 0; i < chunk.size(); i++) {
+                chunk.get(i).getDevice().setId(deviceIds.get(i));
+                chunk.get(i).getSim().setId(simIds.get(i));
+            }
+
+            // Insert the boitiers, not attached to a vehicle
+            List<Long> boitierIds = insert("INSERT INTO boitiers (device_id, sim_id) VALUES (?, ?)",
+                    chunk, (ps, boitier) -> {
+                        ps.setLong(1, boitier.getDevice().getId());
+                        ps.setLong(2, boitier.getSim().getId());
+                    });
+            for (int i = 0; i < chunk.size(); i++) {
+                chunk.get(i).setId(boitierIds.get(i));
+            }
+
+            // Insert the subscriptions
+            List<Long> subscriptionIds = insert(
+                    "INSERT INTO subscriptions (start_date, end_date, boitier_id) VALUES (?, ?, ?)",
+                    chunk, (ps, boitier) -> {
+                        ps.setDate(1, boitier.getSubscription().getStartDate());
+                        ps.setDate(2, boitier.getSubscription().getEndDate());
+                        ps.setLong(3, boitier.getId());
+                    });
+            for (int i = 0; i < chunk.size(); i++) {
+                chunk.get(i).getSubscription().setId(subscriptionIds.get(i));
+                chunk.get(i).getSubscription().setBoitierId(boitierIds.get(i));
+            }
+        }
+    }
+
+    // Run one JDBC batch of the statement for the rows, and return the generated
+    // ids in the order of the rows
+    private List<Long> insert(String sql, List<BoitierDTO> rows,
+            ParameterizedPreparedStatementSetter<BoitierDTO> setter) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(sql, new String[] { "id" }),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        setter.setValues(ps, rows.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                }, keyHolder);
+        return keyHolder.getKeyList().stream()
+                .map(keys -> ((Number) keys.values().iterator().next()).longValue())
+                .toList();
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
@@ -22,8 +23,13 @@ import org.springframework.web.bind.annotation.RestController;
 
 import com.idirtrack.vehicle_service.basic.BasicException;
 import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.basic.MessageType;
+import com.idirtrack.vehicle_service.boitier.https.BoitierBatchRequest;
+import com.idirtrack.vehicle_service.boitier.https.BoitierCsvParser;
+import com.idirtrack.vehicle_service.boitier.https.BoitierDecommissionRequest;
 import com.idirtrack.vehicle_service.boitier.https.BoitierRequest;
 import com.idirtrack.vehicle_service.utils.ValidationUtil;
+import com.idirtrack.vehicle_service.utils.ValidationUtils;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -38,6 +44,9 @@ public class BoitierController {
     @Autowired
     private BoitierService boitierService;
 
+    @Autowired
+    private BoitierBatchService boitierBatchService;
+
     @PostMapping("/")
     public ResponseEntity<BasicResponse> createBoitier(@Valid @RequestBody BoitierRequest request,
             BindingResult bindingResult) {
@@ -75,10 +84,130 @@ public class BoitierController {
         }
     }
 
+    /**
+     * CREATE A BATCH OF BOITIERS
+     * 
+     * Validates the whole batch with set-based queries and inserts the boitiers
+     * with JDBC batches, the batch is created entirely or not at all. See
+     * {@link BoitierBatchService#createBoitiersBatch(List)}.
+     * 
+     * @param request the boitiers to create
+     * @return ResponseEntity<BasicResponse>
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<BasicResponse> createBoitiersBatch(@Valid @RequestBody BoitierBatchRequest request,
+            BindingResult bindingResult) {
+        // Validate the request body
+        if (bindingResult.hasErrors()) {
+            List<Error> errors = ValidationUtils.extractErrorsFromBindingResult(bindingResult);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(BasicResponse.builder()
+                    .message("Validation Error")
+                    .errorsList(errors)
+                    .build());
+        }
+        // Try to create the boitiers
+        try {
+            BasicResponse response = boitierBatchService.createBoitiersBatch(request.getBoitiers());
+            return ResponseEntity.status(response.getStatus()).body(response);
+        }
+        // Catch and handle BasicException
+        catch (BasicException e) {
+            return ResponseEntity.status(e.getResponse().getStatus()).body(e.getResponse());
+        }
+        // Catch and handle any other exception
+        catch (Exception e) {
+            BasicResponse response = BasicResponse.builder()
+                    .message("Internal Server Error")
+                    .build();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * IMPORT BOITIERS FROM A JSON FILE
+     * 
+     * The file is an array of boitiers. Unlike the batch, the invalid boitiers
+     * do not stop the import, every boitier is reported. See
+     * {@link BoitierBatchService#importBoitiers(List)}.
+     * 
+     * @param requests the boitiers of the file
+     * @return ResponseEntity<BasicResponse> with the result of each boitier
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BasicResponse> importBoitiers(@RequestBody(required = false) List<BoitierRequest> requests) {
+        // The file must be an array of boitiers
+        if (requests == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(BasicResponse.builder()
+                    .message("The file must contain an array of boitiers")
+                    .messageType(MessageType.ERROR)
+                    .status(HttpStatus.BAD_REQUEST)
+                    .build());
+        }
+        try {
+            BasicResponse response = boitierBatchService.importBoitiers(requests);
+            return ResponseEntity.status(response.getStatus()).body(response);
+        } catch (BasicException e) {
+            return ResponseEntity.status(e.getResponse().getStatus()).body(e.getResponse());
+        } catch (Exception e) {
+            BasicResponse response = BasicResponse.builder()
+                    .message("Internal Server Error")
+                    .build();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * IMPORT BOITIERS FROM A CSV FILE
+     * 
+     * Same as the JSON import, the columns of the file are described in
+     * {@link BoitierCsvParser}.
+     * 
+     * @param csv the content of the file
+     * @return ResponseEntity<BasicResponse> with the result of each boitier
+     */
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<BasicResponse> importBoitiersCsv(@RequestBody String csv) {
+        try {
+            BasicResponse response = boitierBatchService.importBoitiers(BoitierCsvParser.parse(csv));
+            return ResponseEntity.status(response.getStatus()).body(response);
+        } catch (BasicException e) {
+            return ResponseEntity.status(e.getResponse().getStatus()).body(e.getResponse());
+        } catch (Exception e) {
+            BasicResponse response = BasicResponse.builder()
+                    .message("Internal Server Error")
+                    .build();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * GET ALL BOITIERS
+     * 
+     * Uses the keyset mode when the after cursor is present (empty for the first
+     * slice), the page number otherwise. The total pages are skipped when
+     * withTotal is false
+     * 
+     * @param page
+     * @param size
+     * @param after
+     * @param withTotal
+     * @return ResponseEntity<BasicResponse>
+     */
     @GetMapping("/")
     public ResponseEntity<BasicResponse> getAllBoitiers(@RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "5") int size) {
-        BasicResponse response = boitierService.getAllBoitiers(page, size);
+            @RequestParam(defaultValue = "5") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "true") boolean withTotal) {
+        // Keyset mode
+        if (after != null) {
+            try {
+                BasicResponse response = boitierService.getAllBoitiersAfter(after, size);
+                return ResponseEntity.status(HttpStatus.OK).body(response);
+            } catch (BasicException e) {
+                return ResponseEntity.status(e.getResponse().getStatus()).body(e.getResponse());
+            }
+        }
+        BasicResponse response = boitierService.getAllBoitiers(page, size, withTotal);
         return ResponseEntity.status(HttpStatus.OK).body(response);
     }
 
@@ -113,17 +242,27 @@ public class BoitierController {
     /**
      * GET LIST OF BOITIERS NOT ASSOCIATED WITH A VEHICLE
      * 
+     * Uses the keyset mode when the after cursor is present (empty for the first
+     * slice), the page number otherwise. The total pages are skipped when
+     * withTotal is false
+     * 
      * @param page
      * @param size
+     * @param after
+     * @param withTotal
      * @return ResponseEntity<BasicResponse>
      */
 
     @GetMapping("/unassigned/")
     public ResponseEntity<BasicResponse> getUnassignedBoitiers(@RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "5") int size) {
+            @RequestParam(defaultValue = "5") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "true") boolean withTotal) {
         // Try to get the list of unassigned boitiers
         try {
-            BasicResponse response = boitierService.getUnassignedBoitiers(page, size);
+            BasicResponse response = after != null
+                    ? boitierService.getUnassignedBoitiersAfter(after, size)
+                    : boitierService.getUnassignedBoitiers(page, size, withTotal);
             return ResponseEntity.status(HttpStatus.OK).body(response);
         }
         // Catch any BasicExceptions
@@ -153,6 +292,39 @@ public class BoitierController {
         }
     }
 
+    /**
+     * DECOMMISSION BOITIERS
+     * 
+     * Deletes many boitiers with their devices, sims and subscriptions in one
+     * transaction. See
+     * {@link BoitierBatchService#decommissionBoitiers(List, boolean)}.
+     * 
+     * @param request the boitiers to delete and whether they are lost
+     * @return ResponseEntity<BasicResponse>
+     */
+    @PostMapping("/decommission")
+    public ResponseEntity<BasicResponse> decommissionBoitiers(@Valid @RequestBody BoitierDecommissionRequest request,
+            BindingResult bindingResult) {
+        // Validate the request body
+        if (bindingResult.hasErrors()) {
+            List<Error> errors = ValidationUtils.extractErrorsFromBindingResult(bindingResult);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(BasicResponse.builder()
+                    .message("Validation Error")
+                    .errorsList(errors)
+                    .build());
+        }
+        // Try to delete the boitiers
+        try {
+            BasicResponse response = boitierBatchService.decommissionBoitiers(request.getBoitiersIds(),
+                    request.isLost());
+            return ResponseEntity.status(response.getStatus()).body(response);
+        }
+        // Catch and handle BasicException
+        catch (BasicException e) {
+            return ResponseEntity.status(e.getResponse().getStatus()).body(e.getResponse());
+        }
+    }
+
     //update boitier by id
     @PutMapping("/{id}/")
     public ResponseEntity<BasicResponse> updateBoitierById(@PathVariable Long id, @Valid @RequestBody BoitierRequest request,
@@ -1,13 +1,79 @@
 package com.idirtrack.vehicle_service.boitier;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.idirtrack.vehicle_service.boitier.dto.BoitierIdsResolution;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierOwnership;
+import com.idirtrack.vehicle_service.vehicle.Vehicle;
 
 public interface BoitierRepository extends JpaRepository<Boitier, Long> {
     
     Page<Boitier> findAll(Pageable pageable);
 
     Page<Boitier> findAllByVehicleIsNull(Pageable pageRequest);
+
+    // Slices of boitiers with their device and sim, the total count is not queried, see CountCache
+    @EntityGraph(attributePaths = { "device", "sim" })
+    Slice<Boitier> findSliceBy(Pageable pageable);
+
+    @EntityGraph(attributePaths = { "device", "sim" })
+    Slice<Boitier> findSliceByVehicleIsNull(Pageable pageable);
+
+    long countByVehicleIsNull();
+
+    // Keyset pagination: boitiers seeked by id in ascending order, without count query
+    @EntityGraph(attributePaths = { "device", "sim" })
+    List<Boitier> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @EntityGraph(attributePaths = { "device", "sim" })
+    List<Boitier> findByVehicleIsNullAndIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // Find all boitiers of the list with their device and sim in one query
+    @EntityGraph(attributePaths = { "device", "sim" })
+    List<Boitier> findAllByIdIn(Collection<Long> ids);
+
+    // Count the boitiers of the list that exist, in one query
+    long countByIdIn(Collection<Long> ids);
+
+    // Read the vehicle, device and sim identifiers of the boitiers of the list, in one query
+    @Query("SELECT new com.idirtrack.vehicle_service.boitier.dto.BoitierOwnership("
+            + "b.id, v.id, d.id, d.imei, d.deviceMicroserviceId, s.id, s.phone, s.simMicroserviceId) "
+            + "FROM Boitier b LEFT JOIN b.vehicle v LEFT JOIN b.device d LEFT JOIN b.sim s "
+            + "WHERE b.id IN :ids")
+    List<BoitierOwnership> findOwnershipByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Resolve the list of ids into the boitiers found, the missing ids and the attached boitiers
+    default BoitierIdsResolution resolveIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return BoitierIdsResolution.of(ids, List.of());
+        }
+        return BoitierIdsResolution.of(ids, findOwnershipByIdIn(ids));
+    }
+
+    // Attach the boitiers of the list that are not attached yet to the vehicle, in one statement,
+    // and return how many were attached. A boitier attached meanwhile by another request is skipped.
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Boitier b SET b.vehicle = :vehicle WHERE b.id IN :ids AND b.vehicle IS NULL")
+    int attachToVehicle(@Param("vehicle") Vehicle vehicle, @Param("ids") Collection<Long> ids);
+
+    // Detach the boitiers of the vehicles in one statement, to undo the partial attach of a
+    // vehicle whose other boitiers were attached meanwhile by another request
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Boitier b SET b.vehicle = NULL WHERE b.vehicle.id IN :vehicleIds")
+    int detachFromVehicles(@Param("vehicleIds") Collection<Long> vehicleIds);
 }
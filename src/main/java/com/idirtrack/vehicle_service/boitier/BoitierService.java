@@ -2,34 +2,45 @@ package com.idirtrack.vehicle_service.boitier;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.idirtrack.vehicle_service.basic.BasicException;
 import com.idirtrack.vehicle_service.basic.BasicResponse;
 import com.idirtrack.vehicle_service.basic.MetaData;
 import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
+import com.idirtrack.vehicle_service.cache.CountCache;
 import com.idirtrack.vehicle_service.boitier.https.BoitierGetByIDResponse;
 import com.idirtrack.vehicle_service.boitier.https.BoitierRequest;
 import com.idirtrack.vehicle_service.device.Device;
 import com.idirtrack.vehicle_service.device.DeviceDTO;
 import com.idirtrack.vehicle_service.device.DeviceRepository;
 import com.idirtrack.vehicle_service.device.DeviceService;
+import com.idirtrack.vehicle_service.outbox.StockStatusOutbox;
 import com.idirtrack.vehicle_service.sim.Sim;
 import com.idirtrack.vehicle_service.sim.SimDTO;
 import com.idirtrack.vehicle_service.sim.SimRepository;
 import com.idirtrack.vehicle_service.sim.SimService;
 import com.idirtrack.vehicle_service.subscription.Subscription;
 import com.idirtrack.vehicle_service.subscription.SubscriptionRepository;
+import com.idirtrack.vehicle_service.utils.CursorUtils;
 import com.idirtrack.vehicle_service.utils.Error;
 
 @Service
@@ -44,8 +55,6 @@ public class BoitierService {
         @Autowired
         private SubscriptionRepository subscriptionRepository;
 
-        @Autowired
-        private WebClient.Builder webClientBuilder;
 
         @Autowired
         private DeviceService deviceService;
@@ -53,6 +62,18 @@ public class BoitierService {
         @Autowired
         private SimService simService;
 
+        @Autowired
+        private CountCache countCache;
+
+        @Autowired
+        private StockStatusOutbox stockStatusOutbox;
+
+        @Autowired
+        private TransactionTemplate transactionTemplate;
+
+        @Value("${pagination.keyset.max-size:1000}")
+        private int keysetMaxSize;
+
         /*
          * Create new boitier
          */
@@ -112,61 +133,60 @@ public class BoitierService {
                 }
 
                 try {
-                        // Find the device from the stock microservice
-                        DeviceDTO deviceDTO = deviceService
-                                        .getDeviceByIdFromMicroservice(request.getDeviceMicroserviceId());
-
-                        // Build the device object
-                        Device device = Device.builder()
-                                        .deviceMicroserviceId(deviceDTO.getDeviceMicroserviceId())
-                                        .imei(deviceDTO.getImei())
-                                        .type(deviceDTO.getType())
-                                        .build();
-                        // Save the device in the database
-                        device = deviceRepository.save(device);
-
-                        // Find the sim from the stock microservice
-                        SimDTO simDTO = simService.getSimByIdFromMicroservice(request.getSimMicroserviceId());
-
-                        // Build the sim object
-                        Sim sim = Sim.builder()
-                                        .simMicroserviceId(simDTO.getSimMicroserviceId())
-                                        .phone(simDTO.getPhone())
-                                        .operatorName(simDTO.getOperatorName())
-                                        .ccid(simDTO.getCcid())
-                                        .build();
-                        // Save the sim in the database
-                        sim = simRepository.save(sim);
-
-                        // Save the boitier in the database
-                        Boitier boitier = Boitier.builder()
-                                        .device(device)
-                                        .sim(sim)
-                                        .build();
-                        boitier = boitierRepository.save(boitier);
-
-                        // Save the subscription in the database
-                        Subscription subscription = Subscription.builder()
-                                        .startDate(request.getStartDate())
-                                        .endDate(request.getEndDate())
-                                        .boitier(boitier)
-                                        .build();
-                        subscription = subscriptionRepository.save(subscription);
+                        // Find the device and the sim from the stock microservice, both lookups run
+                        // concurrently and the boitier is saved once both have arrived
+                        CompletableFuture<DeviceDTO> deviceLookup = deviceService
+                                        .getDeviceByIdFromMicroserviceAsync(request.getDeviceMicroserviceId());
+                        CompletableFuture<SimDTO> simLookup = simService
+                                        .getSimByIdFromMicroserviceAsync(request.getSimMicroserviceId());
+                        DeviceDTO deviceDTO = deviceLookup.join();
+                        SimDTO simDTO = simLookup.join();
+
+                        // Save the boitier and record the status changes in one transaction
+                        BoitierDTO boitierDTO = transactionTemplate.execute(status -> {
+                                // Build and save the device
+                                Device device = deviceRepository.save(Device.builder()
+                                                .deviceMicroserviceId(deviceDTO.getDeviceMicroserviceId())
+                                                .imei(deviceDTO.getImei())
+                                                .type(deviceDTO.getType())
+                                                .build());
 
-                        // Change the status of device and sim to installed in stock microservice
-                        Thread thread = new Thread(() -> {
-                                deviceService.changeDeviceStatus(deviceDTO.getDeviceMicroserviceId(), "pending");
-                                simService.changeSimStatus(simDTO.getSimMicroserviceId(), "pending");
+                                // Build and save the sim
+                                Sim sim = simRepository.save(Sim.builder()
+                                                .simMicroserviceId(simDTO.getSimMicroserviceId())
+                                                .phone(simDTO.getPhone())
+                                                .operatorName(simDTO.getOperatorName())
+                                                .ccid(simDTO.getCcid())
+                                                .build());
+
+                                // Save the boitier in the database
+                                Boitier boitier = boitierRepository.save(Boitier.builder()
+                                                .device(device)
+                                                .sim(sim)
+                                                .build());
+
+                                // Save the subscription in the database
+                                Subscription subscription = subscriptionRepository.save(Subscription.builder()
+                                                .startDate(request.getStartDate())
+                                                .endDate(request.getEndDate())
+                                                .boitier(boitier)
+                                                .build());
+
+                                // Change the status of device and sim to pending in stock microservice
+                                stockStatusOutbox.deviceStatusChanged(deviceDTO.getDeviceMicroserviceId(), "pending");
+                                stockStatusOutbox.simStatusChanged(simDTO.getSimMicroserviceId(), "pending");
+
+                                // Create DTOs for the response
+                                return BoitierDTO.builder()
+                                                .id(boitier.getId())
+                                                .device(device.toDTO())
+                                                .sim(sim.toDTO())
+                                                .subscription(subscription.toDTO())
+                                                .build();
                         });
-                        thread.start();
 
-                        // Create DTOs for the response
-                        BoitierDTO boitierDTO = BoitierDTO.builder()
-                                        .id(boitier.getId())
-                                        .device(device.toDTO())
-                                        .sim(sim.toDTO())
-                                        .subscription(subscription.toDTO())
-                                        .build();
+                        // The boitiers counts changed
+                        countCache.invalidate(CountCache.BOITIERS);
 
                         // Return the response
                         return BasicResponse.builder()
@@ -176,9 +196,11 @@ public class BoitierService {
                                         .build();
 
                 } catch (Exception e) {
+                        // A failed lookup reaches here wrapped in a CompletionException
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
                         errors.add(Error.builder()
                                         .key("internal")
-                                        .message("An error occurred while creating the boitier: " + e.getMessage())
+                                        .message("An error occurred while creating the boitier: " + cause.getMessage())
                                         .build());
                         BasicResponse response = BasicResponse.builder()
                                         .status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -266,92 +288,74 @@ public class BoitierService {
                 Device oldDevice = boitier.getDevice();
                 Sim oldSim = boitier.getSim();
 
-                try {
-                        // Update device if different from current device
-                        if (!boitier.getDevice().getDeviceMicroserviceId().equals(request.getDeviceMicroserviceId())) {
-                                // Find the device from the stock microservice
-                                DeviceDTO deviceDTO = deviceService
-                                                .getDeviceByIdFromMicroservice(request.getDeviceMicroserviceId());
-
-                                // Build and save the new device
-                                Device newDevice = Device.builder()
-                                                .deviceMicroserviceId(deviceDTO.getDeviceMicroserviceId())
-                                                .imei(deviceDTO.getImei())
-                                                .type(deviceDTO.getType())
-                                                .build();
-                                newDevice = deviceRepository.save(newDevice);
-
-                                // Update boitier with the new device
-                                boitier.setDevice(newDevice);
-
-                                // Save the boitier with the new device before deleting the old one
-                                boitierRepository.save(boitier);
+                // Check if the device and the sim are replaced
+                boolean isDeviceChanged = !oldDevice.getDeviceMicroserviceId().equals(request.getDeviceMicroserviceId());
+                boolean isSimChanged = !oldSim.getSimMicroserviceId().equals(request.getSimMicroserviceId());
 
-                                // Change the status of the new device to pending in stock microservice
-                                Thread deviceStatusThread = new Thread(() -> {
-                                        deviceService.changeDeviceStatus(request.getDeviceMicroserviceId(), "pending");
-                                        // Change the status of the old device
-                                        if (oldDevice != null) {
-                                                deviceService.changeDeviceStatus(oldDevice.getDeviceMicroserviceId(),
-                                                                "non_installed");
-                                        }
-                                });
-                                deviceStatusThread.start();
-
-                        }
-
-                        // Update sim if different from current sim
-                        if (!boitier.getSim().getSimMicroserviceId().equals(request.getSimMicroserviceId())) {
-                                // Find the sim from the stock microservice
-                                SimDTO simDTO = simService.getSimByIdFromMicroservice(request.getSimMicroserviceId());
-
-                                // Build and save the new sim
-                                Sim newSim = Sim.builder()
-                                                .simMicroserviceId(simDTO.getSimMicroserviceId())
-                                                .phone(simDTO.getPhone())
-                                                .operatorName(simDTO.getOperatorName())
-                                                .ccid(simDTO.getCcid())
-                                                .build();
-                                newSim = simRepository.save(newSim);
-
-                                // Update boitier with the new sim
-                                boitier.setSim(newSim);
-
-                                // Save the boitier with the new sim before deleting the old one
-                                boitierRepository.save(boitier);
-
-                                // Change the status of the new sim to pending in stock microservice
-                                Thread simStatusThread = new Thread(() -> {
-                                        simService.changeSimStatus(request.getSimMicroserviceId(), "pending");
-                                        // Change the status of the old sim
-                                        if (oldSim != null) {
-                                                simService.changeSimStatus(oldSim.getSimMicroserviceId(),
-                                                                "non_installed");
-                                        }
-                                });
-                                simStatusThread.start();
-
-                        }
-
-                        // Update the subscription
-                        Subscription subscription = subscriptionRepository.findAllByBoitierId(boitier.getId())
-                                        .getLast();
-                        subscription.setStartDate(request.getStartDate());
-                        subscription.setEndDate(request.getEndDate());
-                        subscriptionRepository.save(subscription);
-
-                        // Save the updated boitier
-                        boitierRepository.save(boitier);
-
-                        // Delete the old device
-                        if (oldDevice != null) {
-                                deviceRepository.deleteById(oldDevice.getId());
-                        }
-
-                        // Delete the old sim
-                        if (oldSim != null) {
-                                simRepository.deleteById(oldSim.getId());
-                        }
+                try {
+                        // Find the new device and the new sim from the stock microservice, both
+                        // lookups run concurrently
+                        CompletableFuture<DeviceDTO> deviceLookup = isDeviceChanged
+                                        ? deviceService.getDeviceByIdFromMicroserviceAsync(request.getDeviceMicroserviceId())
+                                        : CompletableFuture.completedFuture(null);
+                        CompletableFuture<SimDTO> simLookup = isSimChanged
+                                        ? simService.getSimByIdFromMicroserviceAsync(request.getSimMicroserviceId())
+                                        : CompletableFuture.completedFuture(null);
+                        DeviceDTO deviceDTO = deviceLookup.join();
+                        SimDTO simDTO = simLookup.join();
+
+                        // Update the boitier and record the status changes in one transaction
+                        Subscription subscription = transactionTemplate.execute(status -> {
+                                // Update device if different from current device
+                                if (isDeviceChanged) {
+                                        // Build and save the new device
+                                        Device newDevice = deviceRepository.save(Device.builder()
+                                                        .deviceMicroserviceId(deviceDTO.getDeviceMicroserviceId())
+                                                        .imei(deviceDTO.getImei())
+                                                        .type(deviceDTO.getType())
+                                                        .build());
+
+                                        // Save the boitier with the new device before deleting the old one
+                                        boitier.setDevice(newDevice);
+                                        boitierRepository.save(boitier);
+                                        deviceRepository.deleteById(oldDevice.getId());
+
+                                        // Change the status of the new device to pending and of the old one to
+                                        // non installed in stock microservice
+                                        stockStatusOutbox.deviceStatusChanged(request.getDeviceMicroserviceId(), "pending");
+                                        stockStatusOutbox.deviceStatusChanged(oldDevice.getDeviceMicroserviceId(),
+                                                        "non_installed");
+                                }
+
+                                // Update sim if different from current sim
+                                if (isSimChanged) {
+                                        // Build and save the new sim
+                                        Sim newSim = simRepository.save(Sim.builder()
+                                                        .simMicroserviceId(simDTO.getSimMicroserviceId())
+                                                        .phone(simDTO.getPhone())
+                                                        .operatorName(simDTO.getOperatorName())
+                                                        .ccid(simDTO.getCcid())
+                                                        .build());
+
+                                        // Save the boitier with the new sim before deleting the old one
+                                        boitier.setSim(newSim);
+                                        boitierRepository.save(boitier);
+                                        simRepository.deleteById(oldSim.getId());
+
+                                        // Change the status of the new sim to pending and of the old one to non
+                                        // installed in stock microservice
+                                        stockStatusOutbox.simStatusChanged(request.getSimMicroserviceId(), "pending");
+                                        stockStatusOutbox.simStatusChanged(oldSim.getSimMicroserviceId(), "non_installed");
+                                }
+
+                                // Update the latest subscription
+                                Subscription lastSubscription = subscriptionRepository
+                                                .findFirstByBoitierIdOrderByEndDateDescIdDesc(boitier.getId())
+                                                .orElseThrow();
+                                lastSubscription.setStartDate(request.getStartDate());
+                                lastSubscription.setEndDate(request.getEndDate());
+                                return subscriptionRepository.save(lastSubscription);
+                        });
 
                         // Create DTOs for the response
                         BoitierDTO boitierDTO = BoitierDTO.builder()
@@ -369,9 +373,11 @@ public class BoitierService {
                                         .build();
 
                 } catch (Exception e) {
+                        // A failed lookup reaches here wrapped in a CompletionException
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
                         errors.add(Error.builder()
                                         .key("internal")
-                                        .message("An error occurred while updating the boitier: " + e.getMessage())
+                                        .message("An error occurred while updating the boitier: " + cause.getMessage())
                                         .build());
                         BasicResponse response = BasicResponse.builder()
                                         .status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -385,13 +391,14 @@ public class BoitierService {
 
         /*
          * Service to get all boitiers with pagination
+         * The total pages are only computed if withTotal is true, from the cached count
          */
-        public BasicResponse getAllBoitiers(int page, int size) {
+        public BasicResponse getAllBoitiers(int page, int size, boolean withTotal) {
                 // Créer la pagination
                 Pageable pageRequest = PageRequest.of(page - 1, size);
 
-                // Récupérer tous les boîtiers de la base de données
-                Page<Boitier> boitierPage = boitierRepository.findAll(pageRequest);
+                // Récupérer les boîtiers de la page sans requête de comptage
+                Slice<Boitier> boitierPage = boitierRepository.findSliceBy(pageRequest);
 
                 // Créer une liste de DTOs pour les boîtiers
                 List<BoitierDTO> boitierDTOs = boitierPage.getContent().stream()
@@ -404,9 +411,13 @@ public class BoitierService {
 
                 MetaData metaData = MetaData.builder()
                                 .currentPage(boitierPage.getNumber() + 1)
-                                .totalPages(boitierPage.getTotalPages())
                                 .size(boitierPage.getSize())
+                                .hasNext(boitierPage.hasNext())
                                 .build();
+                if (withTotal) {
+                        long total = countCache.get(CountCache.BOITIERS, "all", boitierRepository::count);
+                        metaData.setTotalPages(new PageImpl<>(boitierPage.getContent(), pageRequest, total).getTotalPages());
+                }
 
                 Map<String, Object> data = new HashMap<>();
                 data.put("boitiers", boitierDTOs);
@@ -420,6 +431,24 @@ public class BoitierService {
                                 .build();
         }
 
+        /*
+         * Service to get all boitiers in keyset mode: seek on the boitier id after the
+         * given cursor (empty for the first slice), without count query
+         */
+        public BasicResponse getAllBoitiersAfter(String after, int size) throws BasicException {
+                BoitierSlice slice = getBoitiersAfter(after, size, boitierRepository::findByIdGreaterThanOrderByIdAsc);
+
+                Map<String, Object> data = new HashMap<>();
+                data.put("boitiers", slice.boitiers());
+                data.put("metadata", slice.metadata());
+
+                return BasicResponse.builder()
+                                .content(data)
+                                .status(HttpStatus.OK)
+                                .message("Boitiers retrieved successfully")
+                                .build();
+        }
+
         /**
          * SERVICE TO DELETE A BOITIER BY ID
          * 
@@ -468,31 +497,31 @@ public class BoitierService {
                 // Stock the device microservice id
                 Long deviceMicroserviceId = device.getDeviceMicroserviceId();
 
-                // Delete Boitier
-                boitierRepository.deleteById(id);
-
-                // Delete Device
-                deviceRepository.deleteById(boitier.getDevice().getId());
+                // Delete the boitier and record the status changes in one transaction
+                transactionTemplate.executeWithoutResult(status -> {
+                        // Delete Boitier
+                        boitierRepository.deleteById(id);
 
-                // Delete Sim
-                simRepository.deleteById(boitier.getSim().getId());
+                        // Delete Device
+                        deviceRepository.deleteById(boitier.getDevice().getId());
 
-                // Delete Subscriptions
-                for (Subscription subscription : subscriptions) {
-                        subscriptionRepository.deleteById(subscription.getId());
-                }
+                        // Delete Sim
+                        simRepository.deleteById(boitier.getSim().getId());
 
-                // Chnage the status of device and sim to lost in stock microservice
-                Thread thread = new Thread(() -> {
-                        if (isLost == true) {
-                                deviceService.changeDeviceStatus(deviceMicroserviceId, "lost");
-                                simService.changeSimStatus(simMicroserviceId, "lost");
-                        } else {
-                                deviceService.changeDeviceStatus(deviceMicroserviceId, "non_installed");
-                                simService.changeSimStatus(simMicroserviceId, "non_installed");
+                        // Delete Subscriptions
+                        for (Subscription subscription : subscriptions) {
+                                subscriptionRepository.deleteById(subscription.getId());
                         }
+
+                        // Chnage the status of device and sim to lost in stock microservice, or return them
+                        // to the stock by setting them to not installed
+                        String stockStatus = isLost ? "lost" : "non_installed";
+                        stockStatusOutbox.deviceStatusChanged(deviceMicroserviceId, stockStatus);
+                        stockStatusOutbox.simStatusChanged(simMicroserviceId, stockStatus);
                 });
-                thread.start();
+
+                // The boitiers counts changed
+                countCache.invalidate(CountCache.BOITIERS);
 
                 // Return the response
                 return BasicResponse.builder()
@@ -510,13 +539,12 @@ public class BoitierService {
          */
 
         public Boolean isExistBoitiers(List<Long> boitierIds) {
-                for (Long boitierId : boitierIds) {
-                        if (!boitierRepository.existsById(boitierId)) {
-                                return false;
-                        }
+                // Count the boitiers found in one query, the duplicated ids are counted once
+                Set<Long> ids = new HashSet<>(boitierIds);
+                if (ids.isEmpty()) {
+                        return true;
                 }
-
-                return true;
+                return boitierRepository.countByIdIn(ids) == ids.size();
         }
 
         public BasicResponse getBoitierById(Long id) throws BasicException {
@@ -527,12 +555,18 @@ public class BoitierService {
                                                 .message("Boitier not found")
                                                 .build()));
 
+                // Get the latest subscription of the boitier only, the lazy subscriptions are
+                // not loaded
+                Subscription lastSubscription = subscriptionRepository
+                                .findFirstByBoitierIdOrderByEndDateDescIdDesc(id)
+                                .orElse(null);
+
                 // Create BoitierGetByIDResponse
                 BoitierGetByIDResponse boitierGetByIDResponse = BoitierGetByIDResponse.builder()
                                 .deviceMicroserviceId(boitier.getDevice().getDeviceMicroserviceId())
                                 .simMicroserviceId(boitier.getSim().getSimMicroserviceId())
-                                .startDate(boitier.getSubscriptions().getLast().getStartDate())
-                                .endDate(boitier.getSubscriptions().getLast().getEndDate()).build();
+                                .startDate(lastSubscription != null ? lastSubscription.getStartDate() : null)
+                                .endDate(lastSubscription != null ? lastSubscription.getEndDate() : null).build();
 
                 // Return the response
                 return BasicResponse.builder()
@@ -549,18 +583,20 @@ public class BoitierService {
          * vehicle.
          * First, it creates a pagination object to get a page of boitiers from the
          * database. Then, it creates a list of DTOs for the boitiers. Finally, it
-         * creates metadata for the response and returns the response.
+         * creates metadata for the response and returns the response. The total pages
+         * are only computed if withTotal is true, from the cached count.
          * 
          * @param page
          * @param size
+         * @param withTotal
          * @return
          */
-        public BasicResponse getUnassignedBoitiers(int page, int size) throws BasicException {
+        public BasicResponse getUnassignedBoitiers(int page, int size, boolean withTotal) throws BasicException {
                 // Create pagination
                 Pageable pageRequest = PageRequest.of(page - 1, size);
 
-                // Get all boitiers not associated with a vehicle
-                Page<Boitier> boitierPage = boitierRepository.findAllByVehicleIsNull(pageRequest);
+                // Get the boitiers not associated with a vehicle, without count query
+                Slice<Boitier> boitierPage = boitierRepository.findSliceByVehicleIsNull(pageRequest);
 
                 // Create a list of DTOs for the boitiers
                 List<BoitierDTO> boitierDTOs = boitierPage.getContent().stream()
@@ -593,9 +629,14 @@ public class BoitierService {
                 // Create metadata
                 MetaData metadata = MetaData.builder()
                                 .currentPage(boitierPage.getNumber() + 1)
-                                .totalPages(boitierPage.getTotalPages())
                                 .size(boitierPage.getSize())
+                                .hasNext(boitierPage.hasNext())
                                 .build();
+                if (withTotal) {
+                        long total = countCache.get(CountCache.BOITIERS, "unassigned",
+                                        boitierRepository::countByVehicleIsNull);
+                        metadata.setTotalPages(new PageImpl<>(boitierPage.getContent(), pageRequest, total).getTotalPages());
+                }
 
                 // Build and return the response
                 return BasicResponse.builder()
@@ -605,4 +646,70 @@ public class BoitierService {
                                 .build();
         }
 
+        /**
+         * GET LIST OF BOITIERS NOT ASSOCIATED WITH A VEHICLE IN KEYSET MODE
+         * 
+         * Same as {@link #getUnassignedBoitiers(int, int, boolean)}, but seeks on the boitier
+         * id after the given cursor instead of using an offset, and does not run a
+         * count query. The cursor of the next slice is returned in the metadata.
+         * 
+         * @param after the cursor returned by the previous slice, empty for the first
+         *              slice
+         * @param size
+         * @return
+         */
+        public BasicResponse getUnassignedBoitiersAfter(String after, int size) throws BasicException {
+                BoitierSlice slice = getBoitiersAfter(after, size,
+                                boitierRepository::findByVehicleIsNullAndIdGreaterThanOrderByIdAsc);
+
+                // Build and return the response
+                return BasicResponse.builder()
+                                .content(slice.boitiers())
+                                .metadata(slice.metadata())
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
+        // A slice of boitiers in keyset mode, with the cursor of the next slice in
+        // its metadata
+        private record BoitierSlice(List<BoitierDTO> boitiers, MetaData metadata) {
+        }
+
+        /*
+         * Get a slice of boitiers in keyset mode: seek with the query on the boitier
+         * id after the given cursor (empty for the first slice), with one extra row
+         * to know if there is a next slice
+         */
+        private BoitierSlice getBoitiersAfter(String after, int size, BiFunction<Long, Limit, List<Boitier>> query)
+                        throws BasicException {
+                // Check the size, then decode the cursor, start from the first boitier if empty
+                CursorUtils.checkSize(size, keysetMaxSize);
+                Long afterId = CursorUtils.decode(after);
+
+                // Get the slice of boitiers, with one extra row to know if there is a next slice
+                List<Boitier> boitiers = query.apply(afterId == null ? 0L : afterId, Limit.of(size + 1));
+
+                // Drop the extra row and build the next cursor from the last boitier
+                String nextCursor = null;
+                if (boitiers.size() > size) {
+                        boitiers = boitiers.subList(0, size);
+                        nextCursor = CursorUtils.encode(boitiers.get(size - 1).getId());
+                }
+
+                // Create a list of DTOs for the boitiers
+                List<BoitierDTO> boitierDTOs = boitiers.stream()
+                                .map(boitier -> BoitierDTO.builder()
+                                                .id(boitier.getId())
+                                                .device(boitier.getDevice().toDTO())
+                                                .sim(boitier.getSim().toDTO())
+                                                .build())
+                                .collect(Collectors.toList());
+
+                MetaData metaData = MetaData.builder()
+                                .size(size)
+                                .nextCursor(nextCursor)
+                                .build();
+                return new BoitierSlice(boitierDTOs, metaData);
+        }
+
 }
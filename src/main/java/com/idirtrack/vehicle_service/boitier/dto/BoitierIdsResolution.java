@@ -0,0 +1,48 @@
+package com.idirtrack.vehicle_service.boitier.dto;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A list of boitier ids resolved against the database: the boitiers found, in
+ * the order of the ids and without duplicates, the ids not found, and the
+ * boitiers found that are already attached to a vehicle.
+ */
+@Data
+@AllArgsConstructor
+public class BoitierIdsResolution {
+    private List<BoitierOwnership> found;
+    private List<Long> missing;
+    private List<BoitierOwnership> attached;
+
+    public static BoitierIdsResolution of(Collection<Long> ids, List<BoitierOwnership> rows) {
+        Map<Long, BoitierOwnership> rowsById = rows.stream()
+                .collect(Collectors.toMap(BoitierOwnership::getBoitierId, Function.identity()));
+
+        List<BoitierOwnership> found = new ArrayList<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            BoitierOwnership row = rowsById.get(id);
+            if (row == null) {
+                missing.add(id);
+            } else {
+                found.add(row);
+            }
+        }
+        return new BoitierIdsResolution(found, missing,
+                found.stream().filter(BoitierOwnership::isAttached).toList());
+    }
+
+    // The ids of the boitiers found
+    public List<Long> getFoundIds() {
+        return found.stream().map(BoitierOwnership::getBoitierId).toList();
+    }
+}
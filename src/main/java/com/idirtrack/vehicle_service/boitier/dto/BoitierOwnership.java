@@ -0,0 +1,27 @@
+package com.idirtrack.vehicle_service.boitier.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The vehicle of a boitier, with the identifiers of its device and sim, read
+ * without loading the entities.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BoitierOwnership {
+    private Long boitierId;
+    private Long vehicleId;
+    private Long deviceId;
+    private String imei;
+    private Long deviceMicroserviceId;
+    private Long simId;
+    private String phone;
+    private Long simMicroserviceId;
+
+    public boolean isAttached() {
+        return vehicleId != null;
+    }
+}
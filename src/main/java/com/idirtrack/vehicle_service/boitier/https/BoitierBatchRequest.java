@@ -0,0 +1,20 @@
+package com.idirtrack.vehicle_service.boitier.https;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BoitierBatchRequest {
+    @NotEmpty(message = "Boitiers are required")
+    @Valid
+    private List<BoitierRequest> boitiers;
+}
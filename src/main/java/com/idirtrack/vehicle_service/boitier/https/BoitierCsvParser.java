@@ -0,0 +1,107 @@
+package com.idirtrack.vehicle_service.boitier.https;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.basic.MessageType;
+import com.idirtrack.vehicle_service.utils.Error;
+
+/**
+ * Read the boitiers of a CSV import file.
+ *
+ * The first line is the header, with the columns deviceMicroserviceId,
+ * simMicroserviceId, startDate and endDate in any order. The dates are written
+ * as yyyy-MM-dd. An empty value is read as a missing field and reported with
+ * its boitier, a malformed value rejects the file.
+ */
+public class BoitierCsvParser {
+
+    private static final List<String> COLUMNS = List.of("deviceMicroserviceId", "simMicroserviceId", "startDate",
+            "endDate");
+
+    /**
+     * Parse the boitiers of the file
+     *
+     * @param csv the content of the file
+     * @return the boitiers, in the order of the lines
+     * @throws BasicException if the header or a value is malformed, with the
+     *                        errors of all the lines
+     */
+    public static List<BoitierRequest> parse(String csv) throws BasicException {
+        List<String> lines = csv.lines().filter(line -> !line.isBlank()).toList();
+        if (lines.isEmpty()) {
+            throw invalid(List.of(Error.builder().key("header").message("The file is empty").build()));
+        }
+
+        // Find the position of each column in the header
+        String[] header = lines.get(0).split(",", -1);
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            positions.put(header[i].trim(), i);
+        }
+        List<Error> errors = new ArrayList<>();
+        for (String column : COLUMNS) {
+            if (!positions.containsKey(column)) {
+                errors.add(Error.builder().key("header").message("Missing column " + column).build());
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw invalid(errors);
+        }
+
+        // Read one boitier per line
+        List<BoitierRequest> requests = new ArrayList<>();
+        for (int lineNumber = 2; lineNumber <= lines.size(); lineNumber++) {
+            String[] values = lines.get(lineNumber - 1).split(",", -1);
+            try {
+                requests.add(BoitierRequest.builder()
+                        .deviceMicroserviceId(toLong(value(values, positions.get("deviceMicroserviceId"))))
+                        .simMicroserviceId(toLong(value(values, positions.get("simMicroserviceId"))))
+                        .startDate(toDate(value(values, positions.get("startDate"))))
+                        .endDate(toDate(value(values, positions.get("endDate"))))
+                        .build());
+            } catch (IllegalArgumentException e) {
+                errors.add(Error.builder()
+                        .key("line " + lineNumber)
+                        .message("Invalid value: " + e.getMessage())
+                        .build());
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw invalid(errors);
+        }
+        return requests;
+    }
+
+    // The trimmed value of the column, null if empty or absent
+    private static String value(String[] values, int position) {
+        if (position >= values.length || values[position].isBlank()) {
+            return null;
+        }
+        return values[position].trim();
+    }
+
+    private static Long toLong(String value) {
+        return value == null ? null : Long.valueOf(value);
+    }
+
+    private static Date toDate(String value) {
+        return value == null ? null : Date.valueOf(value);
+    }
+
+    private static BasicException invalid(List<Error> errors) {
+        return new BasicException(BasicResponse.builder()
+                .message("Invalid CSV file")
+                .messageType(MessageType.ERROR)
+                .errorsList(errors)
+                .status(HttpStatus.BAD_REQUEST)
+                .build());
+    }
+}
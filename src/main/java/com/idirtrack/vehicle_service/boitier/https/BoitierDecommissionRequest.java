@@ -0,0 +1,24 @@
+package com.idirtrack.vehicle_service.boitier.https;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BoitierDecommissionRequest {
+    @NotEmpty(message = "Boitiers IDs are required")
+    private List<Long> boitiersIds;
+
+    // Lost boitiers, otherwise their devices and sims return to the stock
+    @JsonProperty("isLost")
+    private boolean isLost;
+}
@@ -0,0 +1,29 @@
+package com.idirtrack.vehicle_service.boitier.https;
+
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+
+import com.idirtrack.vehicle_service.basic.MessageType;
+import com.idirtrack.vehicle_service.utils.Error;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BoitierImportItemResponse {
+    // Position of the boitier in the imported file, without the CSV header
+    private Integer index;
+    private Long deviceMicroserviceId;
+    private Long simMicroserviceId;
+    private Long boitierId;
+    private HttpStatus status;
+    private MessageType messageType;
+    private String message;
+    private List<Error> errorsList;
+}
@@ -0,0 +1,67 @@
+package com.idirtrack.vehicle_service.cache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Short-lived cache of the total counts used to fill the pagination metadata.
+ * 
+ * Counts are cached per entity and filter for a small TTL, so the list
+ * endpoints polled by the dashboard do not run a COUNT query on every call.
+ * The services invalidate all the counts of an entity when they create or
+ * delete one of its rows.
+ */
+@Component
+public class CountCache {
+
+    public static final String VEHICLES = "vehicles";
+    public static final String BOITIERS = "boitiers";
+
+    private final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
+
+    private final long ttlMillis;
+
+    public CountCache(@Value("${pagination.count-cache.ttl:10s}") Duration ttl) {
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    /**
+     * Get the count of an entity for a filter, loading it if absent or expired
+     * 
+     * @param entity the entity name, one of the constants of this class
+     * @param filter the filter of the count, "all" if none
+     * @param loader the count query
+     * @return the count
+     */
+    public long get(String entity, String filter, LongSupplier loader) {
+        long now = System.currentTimeMillis();
+        CachedCount cached = counts.get(key(entity, filter));
+        if (cached != null && cached.expiresAt() > now) {
+            return cached.value();
+        }
+        long value = loader.getAsLong();
+        counts.put(key(entity, filter), new CachedCount(value, now + ttlMillis));
+        return value;
+    }
+
+    /**
+     * Drop all the cached counts of an entity
+     * 
+     * @param entity the entity name, one of the constants of this class
+     */
+    public void invalidate(String entity) {
+        counts.keySet().removeIf(key -> key.startsWith(entity + ":"));
+    }
+
+    private String key(String entity, String filter) {
+        return entity + ":" + filter;
+    }
+
+    private record CachedCount(long value, long expiresAt) {
+    }
+}
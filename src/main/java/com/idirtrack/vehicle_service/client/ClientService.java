@@ -1,25 +1,104 @@
 package com.idirtrack.vehicle_service.client;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import com.fasterxml.jackson.databind.introspect.TypeResolutionContext.Basic;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.idirtrack.vehicle_service.basic.BasicResponse;
 import com.idirtrack.vehicle_service.vehicle.https.VehicleRequest;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
 @Service
 public class ClientService {
 
+    private static final Logger logger = LoggerFactory.getLogger(ClientService.class);
+
     @Autowired
     private ClientRepository clientRepository;
 
     @Autowired
-    private WebClient.Builder webClientBuilder;
+    @Qualifier("userServiceWebClient")
+    private WebClient userServiceWebClient;
+
+    // Local clients by client microservice id, the hits and misses are published
+    // under cache.gets with the name "clients"
+    private final AsyncCache<Long, Client> clients;
+
+    public ClientService(@Value("${client.cache.ttl:10m}") Duration ttl,
+            @Value("${client.cache.max-size:10000}") long maxSize,
+            MeterRegistry meterRegistry) {
+        this.clients = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, clients, "clients");
+    }
+
+    /**
+     * GET THE LOCAL CLIENT OF A CLIENT MICROSERVICE ID
+     * 
+     * The client is read from the cache, else from the database, else from the
+     * user microservice and saved in the database. The concurrent lookups of the
+     * same missing client wait for the first one, so the client is loaded and
+     * saved once.
+     * 
+     * @param clientMicroserviceId
+     * @return Client, or null if the user microservice does not know it
+     */
+    public Client getOrCreateClient(Long clientMicroserviceId) {
+        CompletableFuture<Client> loading = new CompletableFuture<>();
+        CompletableFuture<Client> client = clients.get(clientMicroserviceId, (id, executor) -> loading);
+
+        // The first lookup loads the client, a null or failed load is not cached
+        if (client == loading) {
+            try {
+                loading.complete(loadClient(clientMicroserviceId));
+            } catch (RuntimeException e) {
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return client.join();
+    }
+
+    private Client loadClient(Long clientMicroserviceId) {
+        Client client = clientRepository.findByClientMicroserviceId(clientMicroserviceId);
+        if (client == null) {
+            ClientDTO clientDTO = getClientFormUserMicroservice(clientMicroserviceId);
+            if (clientDTO == null) {
+                return null;
+            }
+            try {
+                client = saveClient(clientDTO);
+            } catch (DataIntegrityViolationException e) {
+                // Another instance saved the client meanwhile
+                client = clientRepository.findByClientMicroserviceId(clientMicroserviceId);
+                if (client == null) {
+                    throw e;
+                }
+            }
+        }
+        // Cache a detached copy without the lazy vehicles
+        return client.toDTO().toEntity();
+    }
 
     /**
      * Check if a client exists in the user microservice
@@ -35,9 +114,9 @@ public class ClientService {
                 id, clientName, companyName);
 
         // Send request to user microservice to check if the client exists
-        BasicResponse response = webClientBuilder.build()
+        BasicResponse response = userServiceWebClient
                 .get()
-                .uri("http://user-service/user-api/clients" + uri)
+                .uri("/user-api/clients" + uri)
                 .retrieve()
                 .bodyToMono(BasicResponse.class)
                 .block();
@@ -78,9 +157,9 @@ public class ClientService {
             String uri = String.format("/%d/", id);
 
             // Send request to user microservice to check if the client exists
-            BasicResponse response = webClientBuilder.build()
+            BasicResponse response = userServiceWebClient
                     .get()
-                    .uri("http://user-service/user-api/clients" + uri)
+                    .uri("/user-api/clients" + uri)
                     .retrieve()
                     .bodyToMono(BasicResponse.class)
                     .block();
@@ -117,6 +196,11 @@ public class ClientService {
             System.err.println("Error occurred while calling user-service: " + e.getMessage());
             // return fallbackClientDTO(id);
             return null;
+        } catch (WebClientRequestException e) {
+            // The user microservice did not answer before the timeout or refused the
+            // connection
+            logger.error("Error occurred while calling user-service: {}", e.getMessage());
+            return null;
         } catch (NullPointerException e) {
             // Handle the null pointer exception and log the error
             System.err.println("Error processing response: " + e.getMessage());
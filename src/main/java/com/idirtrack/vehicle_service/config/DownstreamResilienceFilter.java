@@ -0,0 +1,73 @@
+package com.idirtrack.vehicle_service.config;
+
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.github.resilience4j.reactor.timelimiter.TimeLimiterOperator;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import reactor.core.publisher.Mono;
+
+/**
+ * Circuit breaker, bulkhead and time limiter of the requests to a downstream
+ * service
+ *
+ * The bulkhead bounds the requests in flight, the time limiter bounds the wait
+ * for the response, and the circuit breaker stops the requests while the
+ * downstream service fails. A 5xx response is a failure of the downstream
+ * service. A rejected or timed out request fails with a
+ * {@link WebClientRequestException}, like a request that could not reach the
+ * service, so the callers handle it as they already handle a connection error.
+ */
+public class DownstreamResilienceFilter implements ExchangeFilterFunction {
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final TimeLimiter timeLimiter;
+
+    public DownstreamResilienceFilter(CircuitBreaker circuitBreaker, Bulkhead bulkhead, TimeLimiter timeLimiter) {
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.timeLimiter = timeLimiter;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return next.exchange(request)
+                // A 5xx response counts as a failure of the downstream service
+                .flatMap(response -> response.statusCode().is5xxServerError()
+                        ? response.createException().flatMap(Mono::<ClientResponse>error)
+                        : Mono.just(response))
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(TimeLimiterOperator.of(timeLimiter))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .onErrorMap(DownstreamResilienceFilter::isRejected,
+                        e -> new WebClientRequestException(e, request.method(), request.url(), request.headers()));
+    }
+
+    /**
+     * Check if a request was rejected by the circuit breaker or the bulkhead, or
+     * timed out by the time limiter, before the downstream service answered
+     *
+     * Such a request must not be retried at once, the retry would be rejected too.
+     *
+     * @param throwable the error of the request, or its cause
+     * @return true if the request was rejected or timed out
+     */
+    public static boolean isRejected(Throwable throwable) {
+        Throwable cause = throwable instanceof WebClientRequestException ? throwable.getCause() : throwable;
+        return cause instanceof CallNotPermittedException
+                || cause instanceof BulkheadFullException
+                || cause instanceof TimeoutException;
+    }
+}
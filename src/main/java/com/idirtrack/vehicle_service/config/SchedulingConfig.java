@@ -0,0 +1,12 @@
+package com.idirtrack.vehicle_service.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables the background jobs, like the stock status outbox dispatcher
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,74 @@
+package com.idirtrack.vehicle_service.config;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Executor of the status changes sent to the stock microservice in the
+ * background.
+ *
+ * The executor is a bounded pool, of platform threads by default or of virtual
+ * threads, whose callers run the task themselves when the queue is full. The
+ * pending status changes are drained on shutdown, and the active tasks, queue
+ * depth and rejections are exposed as metrics.
+ */
+@Configuration
+public class StockStatusExecutorConfig {
+
+    private static final String METRIC_PREFIX = "stock.status.executor";
+
+    // Virtual threads by default when the whole service runs on virtual threads
+    @Value("${stock-status.executor.virtual-threads:${spring.threads.virtual.enabled:false}}")
+    private boolean virtualThreads;
+
+    @Value("${stock-status.executor.core-size:4}")
+    private int coreSize;
+
+    @Value("${stock-status.executor.max-size:16}")
+    private int maxSize;
+
+    @Value("${stock-status.executor.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${stock-status.executor.await-termination:30s}")
+    private Duration awaitTermination;
+
+    @Bean
+    public ThreadPoolTaskExecutor stockStatusExecutor(MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("stock-status-");
+        if (virtualThreads) {
+            executor.setThreadFactory(Thread.ofVirtual().name("stock-status-", 0).factory());
+        }
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+
+        // The callers run the task when the queue is full
+        Counter rejectedTasks = meterRegistry.counter(METRIC_PREFIX + ".rejected");
+        ThreadPoolExecutor.CallerRunsPolicy callerRuns = new ThreadPoolExecutor.CallerRunsPolicy();
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            rejectedTasks.increment();
+            callerRuns.rejectedExecution(task, pool);
+        });
+
+        // Drain the pending status changes on shutdown
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationMillis(awaitTermination.toMillis());
+
+        Gauge.builder(METRIC_PREFIX + ".active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".queued", executor, ThreadPoolTaskExecutor::getQueueSize)
+                .register(meterRegistry);
+        return executor;
+    }
+}
@@ -1,17 +1,107 @@
 package com.idirtrack.vehicle_service.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
 @Configuration
+@EnableConfigurationProperties(WebClientProperties.class)
 public class WebClientConfig {
 
+    // Circuit breakers, bulkheads and time limiters configured per downstream
+    // service under resilience4j, with the name of its connection pool
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    private BulkheadRegistry bulkheadRegistry;
+
+    @Autowired
+    private TimeLimiterRegistry timeLimiterRegistry;
+
     @Bean
     @LoadBalanced
     public WebClient.Builder getWebClientBuilder() {
         return WebClient.builder();
     }
-    
+
+    // Shared client of the user microservice
+    @Bean
+    public WebClient userServiceWebClient(@LoadBalanced WebClient.Builder webClientBuilder,
+            WebClientProperties properties) {
+        return buildWebClient(webClientBuilder, "user-service", properties.getUserService());
+    }
+
+    // Shared client of the stock microservice
+    @Bean
+    public WebClient stockServiceWebClient(@LoadBalanced WebClient.Builder webClientBuilder,
+            WebClientProperties properties) {
+        return buildWebClient(webClientBuilder, "stock-service", properties.getStockService());
+    }
+
+    // Client of TracCar, an external server called without the load balancer
+    @Bean
+    public WebClient tracCarWebClient(WebClientProperties properties,
+            @Value("${traccar.username:idirtech }") String username,
+            @Value("${traccar.password:idirtech1}") String password) {
+        return buildWebClient(WebClient.builder(), "traccar", properties.getTraccar())
+                .mutate()
+                .defaultHeaders(headers -> {
+                    headers.setContentType(MediaType.APPLICATION_JSON);
+                    headers.setBasicAuth(username, password);
+                })
+                .build();
+    }
+
+    /**
+     * Build the WebClient of a downstream microservice, on its own connection pool
+     * 
+     * The pool bounds the connections and the requests waiting for one, evicts
+     * the idle connections, and publishes its metrics under
+     * reactor.netty.connection.provider with the name of the downstream. The
+     * requests go through the circuit breaker, the bulkhead and the time limiter
+     * of the same name, whose states are published under resilience4j.
+     */
+    private WebClient buildWebClient(WebClient.Builder webClientBuilder, String name,
+            WebClientProperties.Downstream downstream) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(downstream.getMaxConnections())
+                .pendingAcquireMaxCount(downstream.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(downstream.getPendingAcquireTimeout())
+                .maxIdleTime(downstream.getMaxIdleTime())
+                .maxLifeTime(downstream.getMaxLifeTime())
+                .evictInBackground(downstream.getEvictInBackground())
+                .metrics(true)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) downstream.getConnectTimeout().toMillis())
+                .responseTimeout(downstream.getReadTimeout())
+                .keepAlive(downstream.isKeepAlive());
+
+        // Clone the builder, so the shared load balanced builder keeps its defaults
+        return webClientBuilder.clone()
+                .baseUrl(downstream.getBaseUrl())
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(new DownstreamResilienceFilter(
+                        circuitBreakerRegistry.circuitBreaker(name),
+                        bulkheadRegistry.bulkhead(name),
+                        timeLimiterRegistry.timeLimiter(name)))
+                .codecs(codecs -> codecs.defaultCodecs()
+                        .maxInMemorySize((int) downstream.getMaxInMemorySize().toBytes()))
+                .build();
+    }
 }
@@ -0,0 +1,45 @@
+package com.idirtrack.vehicle_service.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Data;
+
+/**
+ * Connection pool, timeouts and codec settings of the WebClient of each
+ * downstream microservice
+ */
+@Data
+@ConfigurationProperties(prefix = "webclient")
+public class WebClientProperties {
+
+    private Downstream userService = new Downstream("http://user-service");
+    private Downstream stockService = new Downstream("http://stock-service");
+    private Downstream traccar = new Downstream("http://152.228.219.146:8082");
+
+    @Data
+    public static class Downstream {
+        // Resolved by the load balancer from the service name, except for TracCar
+        private String baseUrl;
+        private int maxConnections = 50;
+        // Requests waiting for a connection beyond this are rejected
+        private int pendingAcquireMaxCount = 200;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictInBackground = Duration.ofSeconds(30);
+        private boolean keepAlive = true;
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration readTimeout = Duration.ofSeconds(10);
+        private DataSize maxInMemorySize = DataSize.ofMegabytes(1);
+
+        public Downstream() {
+        }
+
+        public Downstream(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.OneToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -19,7 +20,7 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "devices")
+@Table(name = "devices", uniqueConstraints = @UniqueConstraint(name = "uk_devices_device_microservice_id", columnNames = "device_microservice_id"))
 public class Device {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
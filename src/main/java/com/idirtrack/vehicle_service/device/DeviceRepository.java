@@ -1,9 +1,19 @@
 package com.idirtrack.vehicle_service.device;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface DeviceRepository extends JpaRepository<Device, Long>{
 
     Boolean existsByDeviceMicroserviceId(Long deviceMicroserviceId);
+
+    // Find which of the stock devices are already used in a boitier, in one query
+    @Query("SELECT d.deviceMicroserviceId FROM Device d WHERE d.deviceMicroserviceId IN :deviceMicroserviceIds")
+    List<Long> findExistingDeviceMicroserviceIds(
+            @Param("deviceMicroserviceIds") Collection<Long> deviceMicroserviceIds);
     
 }
@@ -2,94 +2,109 @@ package com.idirtrack.vehicle_service.device;
 
 import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.idirtrack.vehicle_service.basic.BasicException;
 import com.idirtrack.vehicle_service.basic.BasicResponse;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import reactor.core.publisher.Mono;
-import reactor.util.retry.Retry;
 
 @Service
 public class DeviceService {
 
     @Autowired
-    private WebClient.Builder webClientBuilder;
+    @Qualifier("stockServiceWebClient")
+    private WebClient stockServiceWebClient;
 
     private static final Logger logger = LoggerFactory.getLogger(DeviceService.class);
 
+    // Devices found in the stock microservice by id, the hits and misses are
+    // published under cache.gets with the name "devices"
+    private final AsyncCache<Long, DeviceDTO> devices;
+
+    public DeviceService(@Value("${stock-lookup.cache.ttl:30s}") Duration ttl,
+            @Value("${stock-lookup.cache.max-size:10000}") long maxSize,
+            MeterRegistry meterRegistry) {
+        this.devices = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, devices, "devices");
+    }
+
     /**
-     * Service for chnage the status of a device in stock microservice
+     * FIND DEVICE BY ID IN STOCK MICROSERVICE
+     * 
+     * The device is read from a short-lived cache, see
+     * {@link #getDeviceByIdFromMicroserviceAsync(Long)}.
      * 
-     * @param id
-     * @param status
-     * @return boolean
+     * @param id The ID of the device
+     * @return DeviceDTO
+     * @throws BasicException if the device is not found
      */
 
-    public Boolean changeDeviceStatus(Long id, String status) {
-        // Construct the URI with query parameters
-        String uri = String.format("/?id=%d&status=%s", id, status);
-
+    public DeviceDTO getDeviceByIdFromMicroservice(Long id) throws BasicException {
         try {
-            // Send request to stock microservice to change the status of the device
-            WebClient.ResponseSpec responseSpec = webClientBuilder.build()
-                    .put()
-                    .uri("http://stock-service/stock-api/devices/status" + uri)
-                    .retrieve()
-                    .onStatus(httpStatus -> httpStatus == HttpStatus.SERVICE_UNAVAILABLE,
-                            clientResponse -> Mono.error(new RuntimeException("Service Unavailable")));
-
-            // Retry mechanism
-            BasicResponse response = responseSpec
-                    .bodyToMono(BasicResponse.class)
-                    .retryWhen(Retry.fixedDelay(5, Duration.ofSeconds(4))
-                            .filter(throwable -> throwable instanceof RuntimeException))
-                    .block();
-
-            // If response status is 200 OK, return true
-            return responseSpec.toBodilessEntity()
-                    .map(entity -> entity.getStatusCode() == HttpStatus.OK)
-                    .block();
-
-        } catch (Exception e) {
-            logger.error("Error in changeDeviceStatus: " + e.getMessage());
-            return false;
+            return getDeviceByIdFromMicroserviceAsync(id).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof BasicException basicException) {
+                throw basicException;
+            }
+            throw e;
         }
     }
 
     /**
-     * FIND DEVICE BY ID IN STOCK MICROSERVICE
+     * FIND DEVICE BY ID IN STOCK MICROSERVICE WITHOUT BLOCKING
      * 
-     * This method finds a device by its ID in the stock microservice. It returns a
-     * device object if the device is found, otherwise it throws a BasicException.
+     * The devices found are cached for a short time. The lookups of a device
+     * already requested share the request in flight, so a device is requested
+     * once however many callers look it up at the same time. A failed lookup is
+     * not cached.
      * 
      * @param id The ID of the device
-     * @return
+     * @return a future completed with the device, or with a BasicException if
+     *         the device is not found
      */
+    public CompletableFuture<DeviceDTO> getDeviceByIdFromMicroserviceAsync(Long id) {
+        return devices.get(id, (key, executor) -> fetchDevice(key)
+                // Drop the failed lookup before its callers see the error, so a retry
+                // requests the device again
+                .doOnError(e -> devices.synchronous().invalidate(key))
+                .toFuture());
+    }
 
-    public DeviceDTO getDeviceByIdFromMicroservice(Long id) throws BasicException {
+    private Mono<DeviceDTO> fetchDevice(Long id) {
         // Call the stock microservice to get the device by its ID
-        BasicResponse response = webClientBuilder.build()
+        return stockServiceWebClient
                 .get()
-                .uri("http://stock-service/stock-api/devices/" + id + "/")
+                .uri("/stock-api/devices/" + id + "/")
                 .retrieve()
                 .bodyToMono(BasicResponse.class)
-                .block();
-
-        if (response == null || response.getContent() == null) {
-            BasicResponse errorResponse = BasicResponse.builder()
-                    .status(HttpStatus.NOT_FOUND)
-                    .message("Device not found")
-                    .build();
-            throw new BasicException(errorResponse);
-        }
+                .filter(response -> response.getContent() != null)
+                .map(this::toDeviceDTO)
+                .switchIfEmpty(Mono.error(() -> new BasicException(BasicResponse.builder()
+                        .status(HttpStatus.NOT_FOUND)
+                        .message("Device not found")
+                        .build())));
+    }
 
+    private DeviceDTO toDeviceDTO(BasicResponse response) {
         // Cast the content to a Map
         Map<String, Object> content = (Map<String, Object>) response.getContent();
 
@@ -102,8 +117,6 @@ public class DeviceService {
                 .type((String) content.get("deviceType"))
                 .build();
 
-        System.out.println(response.getContent());
-
         // Return the device DTO
         return deviceDTO;
     }
@@ -0,0 +1,10 @@
+package com.idirtrack.vehicle_service.outbox;
+
+public enum OutboxStatus {
+    // Waiting to be sent to the stock microservice
+    PENDING,
+    // Accepted by the stock microservice
+    DISPATCHED,
+    // Given up after the maximum number of attempts
+    FAILED
+}
@@ -0,0 +1,261 @@
+package com.idirtrack.vehicle_service.outbox;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.idirtrack.vehicle_service.stock.StockStatusClient;
+import com.idirtrack.vehicle_service.utils.FutureUtils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Background dispatcher of the stock status outbox.
+ *
+ * The pending events are read in batches, oldest first, and sent to the stock
+ * microservice through the {@link StockStatusClient}, which batches the
+ * changes of the same status in one request. The events of the same device or
+ * sim are sent one after the other in their order, and a failed event holds
+ * back the next ones of the same item, so the stock microservice never receives
+ * an older status after a newer one. A failed event is retried with an
+ * exponential backoff until the maximum number of attempts, with the same
+ * idempotency key.
+ *
+ * Each instance of the service claims its batch: the events are read with a
+ * locking read that skips the rows locked by another instance, and leased by
+ * moving their next attempt past the send, so the other instances do not read
+ * them again until the outcome is recorded or the lease ends. An item is only
+ * claimed from its oldest pending event, so the next events of an item claimed
+ * by another instance are not sent before it.
+ */
+@Component
+public class StockStatusDispatcher {
+
+        private final StockStatusEventRepository stockStatusEventRepository;
+
+        @Autowired
+        private StockStatusClient stockStatusClient;
+
+        @Autowired
+        private TransactionTemplate transactionTemplate;
+
+        @Value("${stock-status.outbox.batch-size:100}")
+        private int batchSize;
+
+        @Value("${stock-status.outbox.max-attempts:10}")
+        private int maxAttempts;
+
+        @Value("${stock-status.outbox.initial-backoff:1s}")
+        private Duration initialBackoff;
+
+        @Value("${stock-status.outbox.max-backoff:5m}")
+        private Duration maxBackoff;
+
+        @Value("${stock-status.outbox.deadline:30s}")
+        private Duration deadline;
+
+        @Value("${stock-status.outbox.lease:2m}")
+        private Duration lease;
+
+        @Value("${stock-status.outbox.retention:7d}")
+        private Duration retention;
+
+        private final Counter failedEvents;
+
+        private static final Logger logger = LoggerFactory.getLogger(StockStatusDispatcher.class);
+
+        public StockStatusDispatcher(MeterRegistry meterRegistry,
+                        StockStatusEventRepository stockStatusEventRepository) {
+                this.stockStatusEventRepository = stockStatusEventRepository;
+                this.failedEvents = meterRegistry.counter("stock.status.outbox.failed");
+                Gauge.builder("stock.status.outbox.pending", stockStatusEventRepository,
+                                repository -> repository.countByStatus(OutboxStatus.PENDING))
+                                .register(meterRegistry);
+        }
+
+        /**
+         * Send the pending events, batch after batch, while whole batches are
+         * dispatched
+         */
+        @Scheduled(fixedDelayString = "${stock-status.outbox.poll-interval-ms:1000}")
+        public void dispatchPending() {
+                while (dispatchBatch() == batchSize) {
+                        // The outbox may hold more pending events
+                }
+        }
+
+        /**
+         * Send one batch of pending events to the stock microservice
+         *
+         * This method performs the following steps:
+         * 1. Claims the oldest pending events of the items whose events are due, from
+         * the oldest pending event of each item, and groups them by device or sim.
+         * 2. Sends the events of each item in order, the items concurrently so their
+         * changes are batched together, and stops an item at its first failed event.
+         * 3. Marks the sent events as dispatched, and reschedules the failed ones, or
+         * gives them up after the maximum number of attempts. The events not sent
+         * after a failed one are released. Each outcome is one update statement.
+         *
+         * @return the number of events dispatched
+         */
+        public int dispatchBatch() {
+                // Claim the due events, the lease is committed before the events are sent
+                List<StockStatusEvent> events = transactionTemplate.execute(status -> {
+                        Instant now = Instant.now();
+                        List<StockStatusEvent> due = inOrder(stockStatusEventRepository
+                                        .findDueForUpdate(OutboxStatus.PENDING, now, Limit.of(batchSize)));
+                        due.forEach(event -> event.setNextAttemptAt(now.plus(lease)));
+                        return due;
+                });
+                if (events.isEmpty()) {
+                        return 0;
+                }
+
+                // Group the events by item, keeping their order
+                Map<String, List<StockStatusEvent>> eventsByItem = new LinkedHashMap<>();
+                for (StockStatusEvent event : events) {
+                        eventsByItem.computeIfAbsent(event.getItemType() + ":" + event.getItemMicroserviceId(),
+                                        key -> new ArrayList<>()).add(event);
+                }
+
+                // Send the items concurrently, the events of an item in order
+                List<List<StockStatusEvent>> items = new ArrayList<>(eventsByItem.values());
+                List<CompletableFuture<Integer>> calls = items.stream()
+                                .map(itemEvents -> sendInOrder(itemEvents, 0))
+                                .collect(Collectors.toList());
+                FutureUtils.awaitAll(calls, deadline);
+
+                // Record the outcome of each event, with one update per outcome
+                List<Long> dispatchedIds = new ArrayList<>();
+                List<StockStatusEvent> failed = new ArrayList<>();
+                List<Long> releasedIds = new ArrayList<>();
+                Instant sentAt = Instant.now();
+                for (int item = 0; item < items.size(); item++) {
+                        List<StockStatusEvent> itemEvents = items.get(item);
+                        CompletableFuture<Integer> call = calls.get(item);
+                        int sent = call.isDone() && !call.isCompletedExceptionally() ? call.join() : 0;
+                        for (int i = 0; i < sent; i++) {
+                                dispatchedIds.add(itemEvents.get(i).getId());
+                        }
+                        if (sent < itemEvents.size()) {
+                                StockStatusEvent failedEvent = itemEvents.get(sent);
+                                scheduleRetry(failedEvent, call.isDone()
+                                                ? "The stock microservice did not accept the status"
+                                                : "No answer from the stock microservice before the deadline",
+                                                sentAt);
+                                failed.add(failedEvent);
+
+                                // Release the next events of the item, they wait for the failed one
+                                for (int i = sent + 1; i < itemEvents.size(); i++) {
+                                        releasedIds.add(itemEvents.get(i).getId());
+                                }
+                        }
+                }
+                transactionTemplate.executeWithoutResult(status -> {
+                        if (!dispatchedIds.isEmpty()) {
+                                stockStatusEventRepository.markDispatched(dispatchedIds, OutboxStatus.DISPATCHED,
+                                                sentAt);
+                        }
+                        failed.forEach(event -> stockStatusEventRepository.recordFailure(event.getId(),
+                                        event.getStatus(), event.getAttempts(), event.getLastError(),
+                                        event.getNextAttemptAt()));
+                        if (!releasedIds.isEmpty()) {
+                                stockStatusEventRepository.release(releasedIds, sentAt);
+                        }
+                });
+                return dispatchedIds.size();
+        }
+
+        /**
+         * Delete the dispatched events older than the retention
+         */
+        @Scheduled(fixedDelayString = "${stock-status.outbox.purge-interval-ms:3600000}")
+        public void purgeDispatched() {
+                int deleted = stockStatusEventRepository.deleteDispatchedBefore(OutboxStatus.DISPATCHED,
+                                Instant.now().minus(retention));
+                if (deleted > 0) {
+                        logger.info("Purged " + deleted + " dispatched stock status events");
+                }
+        }
+
+        /**
+         * Keep the due events whose earlier pending events of the same item are all
+         * due too, in the claimed order
+         *
+         * The locking read skips the events locked by another instance, so it can
+         * return the next events of an item whose oldest one is being claimed
+         * elsewhere. They are dropped here, an item is only claimed from its oldest
+         * pending event.
+         */
+        private List<StockStatusEvent> inOrder(List<StockStatusEvent> due) {
+                if (due.isEmpty()) {
+                        return due;
+                }
+                Set<Long> dueIds = due.stream().map(StockStatusEvent::getId).collect(Collectors.toSet());
+                Set<String> heldBackItems = new HashSet<>();
+                Set<Long> claimedIds = new HashSet<>();
+                for (StockStatusEvent event : stockStatusEventRepository.findByItemsUpTo(OutboxStatus.PENDING,
+                                due.stream().map(StockStatusEvent::getItemMicroserviceId).collect(Collectors.toSet()),
+                                due.get(due.size() - 1).getId())) {
+                        String item = event.getItemType() + ":" + event.getItemMicroserviceId();
+                        if (!dueIds.contains(event.getId())) {
+                                heldBackItems.add(item);
+                        } else if (!heldBackItems.contains(item)) {
+                                claimedIds.add(event.getId());
+                        }
+                }
+                return due.stream().filter(event -> claimedIds.contains(event.getId())).collect(Collectors.toList());
+        }
+
+        /**
+         * Send the events of one item in order, from an index until the first failure
+         *
+         * @return the number of events of the item accepted by the stock microservice
+         */
+        private CompletableFuture<Integer> sendInOrder(List<StockStatusEvent> itemEvents, int from) {
+                if (from == itemEvents.size()) {
+                        return CompletableFuture.completedFuture(from);
+                }
+                StockStatusEvent event = itemEvents.get(from);
+                return stockStatusClient
+                                .changeStatus(event.getItemType(), event.getItemMicroserviceId(), event.getItemStatus(),
+                                                event.getIdempotencyKey())
+                                .thenCompose(accepted -> accepted
+                                                ? sendInOrder(itemEvents, from + 1)
+                                                : CompletableFuture.completedFuture(from));
+        }
+
+        private void scheduleRetry(StockStatusEvent event, String error, Instant now) {
+                int attempts = event.getAttempts() + 1;
+                event.setAttempts(attempts);
+                event.setLastError(error);
+                if (attempts >= maxAttempts) {
+                        event.setStatus(OutboxStatus.FAILED);
+                        failedEvents.increment();
+                        logger.error("Gave up the " + event.getItemType() + " status " + event.getItemStatus()
+                                        + " of " + event.getItemMicroserviceId() + " after " + attempts + " attempts");
+                        return;
+                }
+                // Exponential backoff, capped to the maximum backoff
+                Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+                event.setNextAttemptAt(now.plus(backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff));
+        }
+}
@@ -0,0 +1,70 @@
+package com.idirtrack.vehicle_service.outbox;
+
+import java.time.Instant;
+
+import com.idirtrack.vehicle_service.stock.StockItemType;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A status change of a device or a sim, waiting in the outbox to be sent to
+ * the stock microservice.
+ *
+ * The event is saved in the same transaction as the boitier or vehicle change
+ * that caused it, and sent later by the {@link StockStatusDispatcher}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "stock_status_outbox", indexes = {
+        @Index(name = "idx_stock_status_outbox_status", columnList = "status, id"),
+        @Index(name = "idx_stock_status_outbox_item", columnList = "item_type, item_microservice_id, status, id")
+})
+public class StockStatusEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private StockItemType itemType;
+
+    // The id of the device or sim in the stock microservice
+    @Column(nullable = false)
+    private Long itemMicroserviceId;
+
+    @Column(name = "item_status", nullable = false, length = 32)
+    private String itemStatus;
+
+    // Sent with every attempt, so the stock microservice can ignore the repeated ones
+    @Column(nullable = false, unique = true, length = 36)
+    private String idempotencyKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private OutboxStatus status;
+
+    private int attempts;
+
+    private Instant createdAt;
+    private Instant nextAttemptAt;
+    private Instant dispatchedAt;
+
+    @Column(length = 512)
+    private String lastError;
+}
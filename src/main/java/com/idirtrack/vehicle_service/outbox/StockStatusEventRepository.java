@@ -0,0 +1,66 @@
+package com.idirtrack.vehicle_service.outbox;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+@Repository
+public interface StockStatusEventRepository extends JpaRepository<StockStatusEvent, Long> {
+
+    // The oldest pending events of the items whose earlier pending events are all due, so an item
+    // waiting for its next attempt holds back only its own events. The rows are locked until the
+    // end of the transaction, the ones locked by another instance are skipped: -2 is the lock
+    // timeout of Hibernate for SKIP LOCKED.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "-2"))
+    @Query("SELECT e FROM StockStatusEvent e WHERE e.status = :status AND NOT EXISTS ("
+            + "SELECT 1 FROM StockStatusEvent o WHERE o.status = :status AND o.itemType = e.itemType "
+            + "AND o.itemMicroserviceId = e.itemMicroserviceId AND o.id <= e.id AND o.nextAttemptAt > :now) "
+            + "ORDER BY e.id")
+    List<StockStatusEvent> findDueForUpdate(@Param("status") OutboxStatus status, @Param("now") Instant now,
+            Limit limit);
+
+    // The events of the devices and sims with the given ids up to an id, whatever their next attempt.
+    // The read does not lock, it also returns the events locked by another instance.
+    @Query("SELECT e FROM StockStatusEvent e WHERE e.status = :status "
+            + "AND e.itemMicroserviceId IN :itemMicroserviceIds AND e.id <= :maxId ORDER BY e.id")
+    List<StockStatusEvent> findByItemsUpTo(@Param("status") OutboxStatus status,
+            @Param("itemMicroserviceIds") Collection<Long> itemMicroserviceIds, @Param("maxId") Long maxId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE StockStatusEvent e SET e.status = :status, e.attempts = e.attempts + 1, "
+            + "e.dispatchedAt = :dispatchedAt, e.lastError = NULL WHERE e.id IN :ids")
+    int markDispatched(@Param("ids") Collection<Long> ids, @Param("status") OutboxStatus status,
+            @Param("dispatchedAt") Instant dispatchedAt);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE StockStatusEvent e SET e.status = :status, e.attempts = :attempts, e.lastError = :lastError, "
+            + "e.nextAttemptAt = :nextAttemptAt WHERE e.id = :id")
+    int recordFailure(@Param("id") Long id, @Param("status") OutboxStatus status, @Param("attempts") int attempts,
+            @Param("lastError") String lastError, @Param("nextAttemptAt") Instant nextAttemptAt);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE StockStatusEvent e SET e.nextAttemptAt = :nextAttemptAt WHERE e.id IN :ids")
+    int release(@Param("ids") Collection<Long> ids, @Param("nextAttemptAt") Instant nextAttemptAt);
+
+    long countByStatus(OutboxStatus status);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM StockStatusEvent e WHERE e.status = :status AND e.dispatchedAt < :before")
+    int deleteDispatchedBefore(@Param("status") OutboxStatus status, @Param("before") Instant before);
+}
@@ -0,0 +1,114 @@
+package com.idirtrack.vehicle_service.outbox;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.idirtrack.vehicle_service.stock.StockItemType;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+/**
+ * Service to record the status changes of the devices and sims for the stock
+ * microservice.
+ *
+ * The changes must be recorded inside the transaction of the boitier or vehicle
+ * change, so they are committed or rolled back with it and never lost if the
+ * process stops before they are sent.
+ */
+@Service
+public class StockStatusOutbox {
+
+    @Autowired
+    private StockStatusEventRepository stockStatusEventRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${stock-status.outbox.insert-size:500}")
+    private int insertSize;
+
+    /**
+     * Record a status change of a device
+     *
+     * @param deviceMicroserviceId the id of the device in the stock microservice
+     * @param status               the new status
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deviceStatusChanged(Long deviceMicroserviceId, String status) {
+        record(StockItemType.DEVICE, deviceMicroserviceId, status);
+    }
+
+    /**
+     * Record a status change of a sim
+     *
+     * @param simMicroserviceId the id of the sim in the stock microservice
+     * @param status            the new status
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void simStatusChanged(Long simMicroserviceId, String status) {
+        record(StockItemType.SIM, simMicroserviceId, status);
+    }
+
+    /**
+     * Record the same status change of many devices or sims
+     *
+     * The events are inserted with multi-row INSERT statements, a few hundred per
+     * statement, instead of one statement per event.
+     *
+     * @param itemType            the type of the items
+     * @param itemMicroserviceIds the ids of the items in the stock microservice
+     * @param status              the new status
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void statusesChanged(StockItemType itemType, List<Long> itemMicroserviceIds, String status) {
+        Instant now = Instant.now();
+        for (int from = 0; from < itemMicroserviceIds.size(); from += insertSize) {
+            List<Long> chunk = itemMicroserviceIds.subList(from,
+                    Math.min(from + insertSize, itemMicroserviceIds.size()));
+
+            // One row of values per event
+            StringBuilder sql = new StringBuilder("INSERT INTO stock_status_outbox (item_type, "
+                    + "item_microservice_id, item_status, idempotency_key, status, attempts, created_at, "
+                    + "next_attempt_at) VALUES ");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, 0, ?, ?)");
+            }
+
+            // The instants are bound by Hibernate, like the ones of the saved events
+            Query query = entityManager.createNativeQuery(sql.toString());
+            int position = 1;
+            for (Long itemMicroserviceId : chunk) {
+                query.setParameter(position++, itemType.name());
+                query.setParameter(position++, itemMicroserviceId);
+                query.setParameter(position++, status);
+                query.setParameter(position++, UUID.randomUUID().toString());
+                query.setParameter(position++, OutboxStatus.PENDING.name());
+                query.setParameter(position++, now);
+                query.setParameter(position++, now);
+            }
+            query.executeUpdate();
+        }
+    }
+
+    private void record(StockItemType itemType, Long itemMicroserviceId, String status) {
+        Instant now = Instant.now();
+        stockStatusEventRepository.save(StockStatusEvent.builder()
+                .itemType(itemType)
+                .itemMicroserviceId(itemMicroserviceId)
+                .itemStatus(status)
+                .idempotencyKey(UUID.randomUUID().toString())
+                .status(OutboxStatus.PENDING)
+                .createdAt(now)
+                .nextAttemptAt(now)
+                .build());
+    }
+}
@@ -0,0 +1,84 @@
+package com.idirtrack.vehicle_service.reactive;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
+import com.idirtrack.vehicle_service.utils.CursorUtils;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive read API of the vehicles and boitiers, for the dashboards
+ *
+ * The request thread is released while the database answers, and the lists
+ * are streamed as NDJSON, one boitier per line, at the pace the client reads
+ * them.
+ */
+@RestController
+@RequestMapping("/vehicle-api/reactive")
+public class ReactiveReadController {
+
+    @Autowired
+    private ReactiveReadService reactiveReadService;
+
+    /**
+     * Retrieves a vehicle by ID, with its client.
+     *
+     * @param vehicleId the ID of the vehicle to retrieve
+     * @return a ResponseEntity containing the BasicResponse with the vehicle details
+     */
+    @GetMapping("/vehicles/{vehicleId}/")
+    public Mono<ResponseEntity<BasicResponse>> getVehicleById(@PathVariable Long vehicleId) {
+        return reactiveReadService.getVehicleById(vehicleId)
+                .map(vehicle -> ResponseEntity.ok(BasicResponse.builder()
+                        .content(vehicle)
+                        .status(HttpStatus.OK)
+                        .build()));
+    }
+
+    /**
+     * Streams the boitiers of a vehicle, with their device, sim and latest
+     * subscription.
+     *
+     * @param vehicleId the ID of the vehicle
+     * @return the boitiers, one per line
+     */
+    @GetMapping(value = "/vehicles/{vehicleId}/boities/", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BoitierDTO> getVehicleBoities(@PathVariable Long vehicleId) {
+        return reactiveReadService.getVehicleBoitiers(vehicleId);
+    }
+
+    /**
+     * Streams the boitiers not associated with a vehicle, with their device and
+     * sim.
+     *
+     * @param after the cursor of the keyset mode, to resume after a boitier
+     *              (optional)
+     * @return the boitiers, one per line
+     */
+    @GetMapping(value = "/boitier/unassigned/", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BoitierDTO> getUnassignedBoitiers(@RequestParam(required = false) String after)
+            throws BasicException {
+        return reactiveReadService.getUnassignedBoitiers(CursorUtils.decode(after));
+    }
+
+    // Answer the errors of the reads with their BasicResponse, before the first line
+    @ExceptionHandler(BasicException.class)
+    public ResponseEntity<BasicResponse> handleBasicException(BasicException e) {
+        return ResponseEntity.status(e.getResponse().getStatus())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(e.getResponse());
+    }
+}
@@ -0,0 +1,166 @@
+package com.idirtrack.vehicle_service.reactive;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.basic.MessageType;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
+import com.idirtrack.vehicle_service.client.ClientDTO;
+import com.idirtrack.vehicle_service.device.DeviceDTO;
+import com.idirtrack.vehicle_service.sim.SimDTO;
+import com.idirtrack.vehicle_service.subscription.SubscriptionDTO;
+import com.idirtrack.vehicle_service.vehicle.VehicleDTO;
+import com.idirtrack.vehicle_service.vehicle.https.VehicleResponse;
+
+import io.r2dbc.spi.Readable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking read side of the vehicles and boitiers, on R2DBC
+ *
+ * The same reads as {@link com.idirtrack.vehicle_service.vehicle.VehicleService}
+ * and {@link com.idirtrack.vehicle_service.boitier.BoitierService}, but no
+ * thread waits for the database. The boitiers are streamed row by row, the rows
+ * are fetched from the database as the client reads them.
+ */
+@Service
+public class ReactiveReadService {
+
+        // The boitiers with their device, sim and latest subscription
+        private static final String SELECT_BOITIERS = "SELECT b.id, "
+                        + "d.id AS device_id, d.imei, d.type, d.device_microservice_id, "
+                        + "s.id AS sim_id, s.phone, s.ccid, s.operator_name, s.sim_microservice_id, "
+                        + "sub.id AS subscription_id, sub.start_date, sub.end_date "
+                        + "FROM boitiers b "
+                        + "JOIN devices d ON d.id = b.device_id "
+                        + "JOIN sims s ON s.id = b.sim_id "
+                        + "LEFT JOIN subscriptions sub ON sub.id = "
+                        + "(SELECT s2.id FROM subscriptions s2 WHERE s2.boitier_id = b.id "
+                        + "ORDER BY s2.end_date DESC, s2.id DESC LIMIT 1) ";
+
+        private final DatabaseClient databaseClient;
+        private final int fetchSize;
+
+        public ReactiveReadService(DatabaseClient databaseClient,
+                        @Value("${reactive-read.fetch-size:100}") int fetchSize) {
+                this.databaseClient = databaseClient;
+                this.fetchSize = fetchSize;
+        }
+
+        /**
+         * Get a vehicle with its client
+         *
+         * @param vehicleId the ID of the vehicle
+         * @return the vehicle, or an error with a NOT_FOUND {@link BasicException}
+         */
+        public Mono<VehicleResponse> getVehicleById(Long vehicleId) {
+                return databaseClient.sql("SELECT v.id, v.matricule, v.type, "
+                                + "c.id AS client_id, c.client_microservice_id, c.name, c.company "
+                                + "FROM vehicles v LEFT JOIN clients c ON c.id = v.client_id WHERE v.id = :vehicleId")
+                                .bind("vehicleId", vehicleId)
+                                .map(row -> VehicleResponse.builder()
+                                                .vehicle(VehicleDTO.builder()
+                                                                .id(row.get("id", Long.class))
+                                                                .matricule(row.get("matricule", String.class))
+                                                                .type(row.get("type", String.class))
+                                                                .build())
+                                                .client(ClientDTO.builder()
+                                                                .id(row.get("client_id", Long.class))
+                                                                .clientMicroserviceId(row.get("client_microservice_id", Long.class))
+                                                                .name(row.get("name", String.class))
+                                                                .company(row.get("company", String.class))
+                                                                .build())
+                                                .build())
+                                .one()
+                                .switchIfEmpty(Mono.error(() -> vehicleNotFound()));
+        }
+
+        /**
+         * Stream the boitiers of a vehicle, with their device, sim and latest
+         * subscription, in ascending id order
+         *
+         * @param vehicleId the ID of the vehicle
+         * @return the boitiers, or an error with a NOT_FOUND {@link BasicException}
+         *         if the vehicle does not exist
+         */
+        public Flux<BoitierDTO> getVehicleBoitiers(Long vehicleId) {
+                // Check the vehicle first, an unknown vehicle is not an empty list
+                return databaseClient.sql("SELECT COUNT(*) FROM vehicles WHERE id = :vehicleId")
+                                .bind("vehicleId", vehicleId)
+                                .map(row -> row.get(0, Long.class))
+                                .one()
+                                .flatMapMany(count -> count == 0 ? Flux.error(vehicleNotFound())
+                                                : databaseClient.sql(SELECT_BOITIERS
+                                                                + "WHERE b.vehicle_id = :vehicleId ORDER BY b.id")
+                                                                .bind("vehicleId", vehicleId)
+                                                                .filter(statement -> statement.fetchSize(fetchSize))
+                                                                .map(this::toBoitierDTO)
+                                                                .all());
+        }
+
+        /**
+         * Stream the boitiers not associated with a vehicle, with their device and
+         * sim, in ascending id order
+         *
+         * @param afterId the id to resume after, null to start from the first boitier
+         * @return the boitiers
+         */
+        public Flux<BoitierDTO> getUnassignedBoitiers(Long afterId) {
+                return databaseClient.sql(SELECT_BOITIERS
+                                + "WHERE b.vehicle_id IS NULL AND b.id > :afterId ORDER BY b.id")
+                                .bind("afterId", afterId == null ? 0L : afterId)
+                                .filter(statement -> statement.fetchSize(fetchSize))
+                                .map(this::toBoitierDTO)
+                                .all();
+        }
+
+        private BoitierDTO toBoitierDTO(Readable row) {
+                // Build the subscription DTO, if the boitier has one
+                Long subscriptionId = row.get("subscription_id", Long.class);
+                SubscriptionDTO subscriptionDTO = subscriptionId == null ? null
+                                : SubscriptionDTO.builder()
+                                                .id(subscriptionId)
+                                                .startDate(toDate(row.get("start_date", LocalDate.class)))
+                                                .endDate(toDate(row.get("end_date", LocalDate.class)))
+                                                .build();
+
+                // Build the boitier DTO
+                return BoitierDTO.builder()
+                                .id(row.get("id", Long.class))
+                                .device(DeviceDTO.builder()
+                                                .id(row.get("device_id", Long.class))
+                                                .imei(row.get("imei", String.class))
+                                                .type(row.get("type", String.class))
+                                                .deviceMicroserviceId(row.get("device_microservice_id", Long.class))
+                                                .build())
+                                .sim(SimDTO.builder()
+                                                .id(row.get("sim_id", Long.class))
+                                                .phone(row.get("phone", String.class))
+                                                .ccid(row.get("ccid", String.class))
+                                                .operatorName(row.get("operator_name", String.class))
+                                                .simMicroserviceId(row.get("sim_microservice_id", Long.class))
+                                                .build())
+                                .subscription(subscriptionDTO)
+                                .build();
+        }
+
+        private static Date toDate(LocalDate date) {
+                return date == null ? null : Date.valueOf(date);
+        }
+
+        private static BasicException vehicleNotFound() {
+                return new BasicException(BasicResponse.builder()
+                                .message("Vehicle not found")
+                                .messageType(MessageType.ERROR)
+                                .status(HttpStatus.NOT_FOUND)
+                                .build());
+        }
+}
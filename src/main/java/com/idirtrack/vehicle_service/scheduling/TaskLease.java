@@ -0,0 +1,36 @@
+package com.idirtrack.vehicle_service.scheduling;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The lease of a scheduled task, held by the instance running it.
+ *
+ * The schedules fire on every instance of the service, the instance claiming
+ * the lease runs the task and the others skip it until the lease ends.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "scheduled_task_leases")
+public class TaskLease {
+
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(nullable = false)
+    private Instant lockedUntil;
+
+    private String lockedBy;
+}
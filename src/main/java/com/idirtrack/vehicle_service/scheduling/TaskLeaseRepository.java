@@ -0,0 +1,23 @@
+package com.idirtrack.vehicle_service.scheduling;
+
+import java.time.Instant;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface TaskLeaseRepository extends JpaRepository<TaskLease, String> {
+
+    // Take the lease if it ended, the update of the row is atomic so a single instance gets it:
+    // 1 when claimed, 0 when another instance holds it
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE TaskLease l SET l.lockedUntil = :until, l.lockedBy = :owner "
+            + "WHERE l.name = :name AND l.lockedUntil <= :now")
+    int claim(@Param("name") String name, @Param("owner") String owner, @Param("now") Instant now,
+            @Param("until") Instant until);
+}
@@ -9,6 +9,7 @@ import jakarta.persistence.Id;
 
 import jakarta.persistence.OneToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -19,7 +20,7 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "sims")
+@Table(name = "sims", uniqueConstraints = @UniqueConstraint(name = "uk_sims_sim_microservice_id", columnNames = "sim_microservice_id"))
 public class Sim {
 
     @Id
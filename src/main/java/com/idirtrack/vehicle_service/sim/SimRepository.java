@@ -1,9 +1,18 @@
 package com.idirtrack.vehicle_service.sim;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface SimRepository extends JpaRepository<Sim, Long>{
     
     Boolean existsBySimMicroserviceId(Long simMicroserviceId);
+
+    // Find which of the stock sims are already used in a boitier, in one query
+    @Query("SELECT s.simMicroserviceId FROM Sim s WHERE s.simMicroserviceId IN :simMicroserviceIds")
+    List<Long> findExistingSimMicroserviceIds(@Param("simMicroserviceIds") Collection<Long> simMicroserviceIds);
     
 }
@@ -2,101 +2,117 @@ package com.idirtrack.vehicle_service.sim;
 
 import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowire;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.idirtrack.vehicle_service.basic.BasicException;
 import com.idirtrack.vehicle_service.basic.BasicResponse;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import reactor.core.publisher.Mono;
 
 import reactor.core.publisher.Mono;
-import reactor.util.retry.Retry;
 
 @Service
 public class SimService {
 
     @Autowired
-    private WebClient.Builder webClientBuilder;
+    @Qualifier("stockServiceWebClient")
+    private WebClient stockServiceWebClient;
 
     private static final Logger logger = LoggerFactory.getLogger(SimService.class);
 
+    // Sims found in the stock microservice by id, the hits and misses are
+    // published under cache.gets with the name "sims"
+    private final AsyncCache<Long, SimDTO> sims;
+
+    public SimService(@Value("${stock-lookup.cache.ttl:30s}") Duration ttl,
+            @Value("${stock-lookup.cache.max-size:10000}") long maxSize,
+            MeterRegistry meterRegistry) {
+        this.sims = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, sims, "sims");
+    }
+
     /**
-     * Service for chnage the status of a sim in stock microservice
+     * FIND SIM BY ID FROM STOCK MICROSERVICE
+     * 
+     * The sim is read from a short-lived cache, see
+     * {@link #getSimByIdFromMicroserviceAsync(Long)}.
      * 
-     * @param id
-     * @param status
-     * @return boolean
+     * @param id The ID of the sim
+     * @return SimDTO
+     * @throws BasicException if the sim is not found
      */
 
-    public Boolean changeSimStatus(Long id, String status) {
-        // Construct the URI with query parameters
-        String uri = String.format("/?id=%d&status=%s", id, status);
-
+    public SimDTO getSimByIdFromMicroservice(Long id) throws BasicException {
         try {
-            // Send request to stock microservice to change the status of the SIM
-            WebClient.ResponseSpec responseSpec = webClientBuilder.build()
-                    .put()
-                    .uri("http://stock-service/stock-api/sim/status" + uri)
-                    .retrieve()
-                    .onStatus(httpStatus -> httpStatus == HttpStatus.SERVICE_UNAVAILABLE,
-                            clientResponse -> Mono.error(new RuntimeException("Service Unavailable")));
-
-            // Retry mechanism
-            BasicResponse response = responseSpec
-                    .bodyToMono(BasicResponse.class)
-                    .retryWhen(Retry.fixedDelay(5, Duration.ofSeconds(4))
-                            .filter(throwable -> throwable instanceof RuntimeException))
-                    .block();
-
-            // If response status is 200 OK, return true
-            return responseSpec.toBodilessEntity()
-                    .map(entity -> entity.getStatusCode() == HttpStatus.OK)
-                    .block();
-
-        } catch (Exception e) {
-            logger.error("Error in changeSimStatus: " + e.getMessage());
-            return false;
+            return getSimByIdFromMicroserviceAsync(id).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof BasicException basicException) {
+                throw basicException;
+            }
+            throw e;
         }
     }
 
     /**
-     * FIND SIM BY ID FROM STOCK MICROSERVICE
+     * FIND SIM BY ID IN STOCK MICROSERVICE WITHOUT BLOCKING
      * 
-     * @param id of the sim
-     * @return SimDTO
-     * @throws BasicException
+     * The sims found are cached for a short time. The lookups of a sim
+     * already requested share the request in flight, so a sim is requested
+     * once however many callers look it up at the same time. A failed lookup is
+     * not cached.
+     * 
+     * @param id The ID of the sim
+     * @return a future completed with the sim, or with a BasicException if
+     *         the sim is not found
      */
+    public CompletableFuture<SimDTO> getSimByIdFromMicroserviceAsync(Long id) {
+        return sims.get(id, (key, executor) -> fetchSim(key)
+                // Drop the failed lookup before its callers see the error, so a retry
+                // requests the sim again
+                .doOnError(e -> sims.synchronous().invalidate(key))
+                .toFuture());
+    }
 
-    public SimDTO getSimByIdFromMicroservice(Long id) throws BasicException {
+    private Mono<SimDTO> fetchSim(Long id) {
         // Call the stock microservice to get the sim by its ID
-        BasicResponse response = webClientBuilder.build()
+        return stockServiceWebClient
                 .get()
-                .uri("http://stock-service/stock-api/sim/" + id + "/")
+                .uri("/stock-api/sim/" + id + "/")
                 .retrieve()
                 .bodyToMono(BasicResponse.class)
-                .block();
-
-        if (response == null || response.getContent() == null) {
-            BasicResponse errorResponse = BasicResponse.builder()
-                    .status(HttpStatus.NOT_FOUND)
-                    .message("Sim not found")
-                    .build();
-            throw new BasicException(errorResponse);
-        }
+                .filter(response -> response.getContent() != null)
+                .map(this::toSimDTO)
+                .switchIfEmpty(Mono.error(() -> new BasicException(BasicResponse.builder()
+                        .status(HttpStatus.NOT_FOUND)
+                        .message("Sim not found")
+                        .build())));
+    }
 
+    private SimDTO toSimDTO(BasicResponse response) {
         // Cast the content to a Map
         Map<String, Object> content = (Map<String, Object>) response.getContent();
 
         Long simMicroserviceId = content.get("id") instanceof Integer ? Long.valueOf((Integer) content.get("id")) : (Long) content.get("id");
 
-
         // Build SimDTO from response.content
         SimDTO simDTO = SimDTO.builder()
                 .simMicroserviceId(simMicroserviceId)
@@ -105,8 +121,6 @@ public class SimService {
                 .ccid((String) content.get("ccid"))
                 .build();
 
-        System.out.println(response.getContent());
-
         // Return the sim DTO
         return simDTO;
     }
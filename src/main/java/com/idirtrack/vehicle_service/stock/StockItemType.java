@@ -0,0 +1,9 @@
+package com.idirtrack.vehicle_service.stock;
+
+/**
+ * The kind of stock item whose status is changed in the stock microservice
+ */
+public enum StockItemType {
+    DEVICE,
+    SIM
+}
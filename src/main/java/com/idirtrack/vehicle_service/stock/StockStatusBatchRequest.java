@@ -0,0 +1,32 @@
+package com.idirtrack.vehicle_service.stock;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Body of one batched status change sent to the stock microservice, all the
+ * items get the same status
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockStatusBatchRequest {
+
+    private String status;
+    private List<Item> items;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        // The id of the device or sim in the stock microservice
+        private Long id;
+        private String idempotencyKey;
+    }
+}
@@ -0,0 +1,233 @@
+package com.idirtrack.vehicle_service.stock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Coalescing client of the status changes of the stock microservice.
+ *
+ * The status changes are buffered for a short window, then the changes of the
+ * same kind of item and the same status are sent as one batched request. A
+ * change already buffered for the same item and status is not sent twice, both
+ * callers get the result of the same request. A batch is sent as soon as it
+ * reaches the maximum size, without waiting for the end of the window.
+ *
+ * The batch endpoint of the stock microservice is used when
+ * {@code stock-status.client.batch-enabled} is on, with a fallback to one
+ * request per item when the stock microservice does not have it. Otherwise
+ * each change of the batch is sent to the status endpoint of its item. The
+ * requests are sent without blocking, so the flush timer only starts them.
+ */
+@Component
+public class StockStatusClient implements DisposableBean {
+
+    private final WebClient stockServiceWebClient;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final boolean batchEnabled;
+    private final int maxConcurrency;
+
+    // The buffered changes of each kind of item and status, by item id
+    private final Map<BatchKey, Map<Long, PendingChange>> buffers = new HashMap<>();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("stock-status-flush").daemon().factory());
+
+    private static final Logger logger = LoggerFactory.getLogger(StockStatusClient.class);
+
+    public StockStatusClient(@Qualifier("stockServiceWebClient") WebClient stockServiceWebClient,
+            @Value("${stock-status.client.buffer-window:5ms}") Duration bufferWindow,
+            @Value("${stock-status.client.max-batch-size:100}") int maxBatchSize,
+            @Value("${stock-status.client.batch-enabled:false}") boolean batchEnabled,
+            @Value("${stock-status.client.max-concurrency:8}") int maxConcurrency) {
+        this.stockServiceWebClient = stockServiceWebClient;
+        this.windowNanos = bufferWindow.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.batchEnabled = batchEnabled;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Change the status of a device or a sim in the stock microservice
+     *
+     * @param itemType           the kind of item
+     * @param itemMicroserviceId the id of the item in the stock microservice
+     * @param status             the new status
+     * @param idempotencyKey     the key of the change, the same for all its
+     *                           attempts
+     * @return a future completed with true if the stock microservice accepted
+     *         the change
+     */
+    public CompletableFuture<Boolean> changeStatus(StockItemType itemType, Long itemMicroserviceId, String status,
+            String idempotencyKey) {
+        BatchKey key = new BatchKey(itemType, status);
+        List<PendingChange> fullBatch = null;
+        PendingChange change;
+        synchronized (buffers) {
+            Map<Long, PendingChange> buffer = buffers.get(key);
+            if (buffer == null) {
+                // First change of the window, flush it at the end of the window
+                buffer = new LinkedHashMap<>();
+                buffers.put(key, buffer);
+                Map<Long, PendingChange> windowBuffer = buffer;
+                timer.schedule(() -> flush(key, windowBuffer), windowNanos, TimeUnit.NANOSECONDS);
+            }
+            change = buffer.computeIfAbsent(itemMicroserviceId,
+                    id -> new PendingChange(id, idempotencyKey, new CompletableFuture<>()));
+            if (buffer.size() >= maxBatchSize) {
+                buffers.remove(key);
+                fullBatch = new ArrayList<>(buffer.values());
+            }
+        }
+        if (fullBatch != null) {
+            send(key, fullBatch).subscribe();
+        }
+        return change.result();
+    }
+
+    /**
+     * Send the changes buffered during a window, unless they were already sent
+     * as a full batch
+     */
+    private void flush(BatchKey key, Map<Long, PendingChange> windowBuffer) {
+        List<PendingChange> batch;
+        synchronized (buffers) {
+            if (!buffers.remove(key, windowBuffer)) {
+                return;
+            }
+            batch = new ArrayList<>(windowBuffer.values());
+        }
+        send(key, batch).subscribe();
+    }
+
+    /**
+     * Send one batch of changes, and complete their futures
+     */
+    private Mono<Void> send(BatchKey key, List<PendingChange> batch) {
+        return batchEnabled ? sendBatch(key, batch) : sendEach(key, batch);
+    }
+
+    /**
+     * Send the changes of a batch in one request, or one by one if the stock
+     * microservice does not have the batch endpoint
+     */
+    private Mono<Void> sendBatch(BatchKey key, List<PendingChange> batch) {
+        StockStatusBatchRequest request = StockStatusBatchRequest.builder()
+                .status(key.status())
+                .items(batch.stream()
+                        .map(change -> StockStatusBatchRequest.Item.builder()
+                                .id(change.id())
+                                .idempotencyKey(change.idempotencyKey())
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+        return stockServiceWebClient
+                .put()
+                .uri("/stock-api/" + path(key.itemType()) + "/status/batch")
+                .bodyValue(request)
+                .retrieve()
+                .toBodilessEntity()
+                .doOnNext(entity -> complete(batch, entity.getStatusCode() == HttpStatus.OK))
+                .then()
+                .onErrorResume(e -> {
+                    if (isBatchUnsupported(e)) {
+                        logger.warn("The stock microservice has no batch endpoint, sending the " + batch.size()
+                                + " " + key.itemType() + " one by one");
+                        return sendEach(key, batch);
+                    }
+                    logger.error("Error in changeStatus of " + batch.size() + " " + key.itemType() + ": "
+                            + e.getMessage());
+                    complete(batch, false);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Send each change of a batch to the status endpoint of its item, at most
+     * {@code stock-status.client.max-concurrency} at once
+     */
+    private Mono<Void> sendEach(BatchKey key, List<PendingChange> batch) {
+        return Flux.fromIterable(batch)
+                .flatMap(change -> stockServiceWebClient
+                        .put()
+                        .uri(uriBuilder -> uriBuilder
+                                .path("/stock-api/" + path(key.itemType()) + "/status/")
+                                .queryParam("id", change.id())
+                                .queryParam("status", key.status())
+                                .build())
+                        .header("Idempotency-Key", change.idempotencyKey())
+                        .retrieve()
+                        .toBodilessEntity()
+                        .map(entity -> entity.getStatusCode() == HttpStatus.OK)
+                        .onErrorResume(e -> {
+                            logger.error("Error in changeStatus of " + key.itemType() + " " + change.id() + ": "
+                                    + e.getMessage());
+                            return Mono.just(false);
+                        })
+                        .doOnNext(accepted -> change.result().complete(accepted)), maxConcurrency)
+                .then();
+    }
+
+    private void complete(List<PendingChange> batch, boolean accepted) {
+        for (PendingChange change : batch) {
+            change.result().complete(accepted);
+        }
+    }
+
+    // A stock microservice without the batch endpoint answers 404 or 405
+    private boolean isBatchUnsupported(Throwable e) {
+        return e instanceof WebClientResponseException response
+                && (response.getStatusCode() == HttpStatus.NOT_FOUND
+                        || response.getStatusCode() == HttpStatus.METHOD_NOT_ALLOWED);
+    }
+
+    private String path(StockItemType itemType) {
+        return switch (itemType) {
+            case DEVICE -> "devices";
+            case SIM -> "sim";
+        };
+    }
+
+    // Send the changes still buffered before stopping
+    @Override
+    public void destroy() {
+        timer.shutdownNow();
+        Map<BatchKey, Map<Long, PendingChange>> remaining;
+        synchronized (buffers) {
+            remaining = new HashMap<>(buffers);
+            buffers.clear();
+        }
+        Mono.when(remaining.entrySet().stream()
+                .map(entry -> send(entry.getKey(), new ArrayList<>(entry.getValue().values())))
+                .collect(Collectors.toList()))
+                .block();
+    }
+
+    private record BatchKey(StockItemType itemType, String status) {
+    }
+
+    private record PendingChange(Long id, String idempotencyKey, CompletableFuture<Boolean> result) {
+    }
+}
@@ -8,6 +8,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -21,7 +22,12 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "subscriptions")
+// The latest subscription of a boitier is read from the end of the (boitier_id, end_date) index,
+// the expiring subscriptions from a range of the end_date index
+@Table(name = "subscriptions", indexes = {
+        @Index(name = "idx_subscriptions_boitier_end_date", columnList = "boitier_id, end_date"),
+        @Index(name = "idx_subscriptions_end_date", columnList = "end_date")
+})
 public class Subscription {
 
     @Id
@@ -0,0 +1,43 @@
+package com.idirtrack.vehicle_service.subscription;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+
+@RestController
+@RequestMapping("/vehicle-api/subscription")
+public class SubscriptionController {
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    /**
+     * GET THE SUBSCRIPTIONS ENDING IN THE NEXT DAYS
+     * 
+     * The latest subscription of each boitier ending between today and today plus
+     * the days, the first to end first
+     * 
+     * @param days
+     * @param page
+     * @param size
+     * @return ResponseEntity<BasicResponse>
+     */
+    @GetMapping("/expiring/")
+    public ResponseEntity<BasicResponse> getExpiringSubscriptions(@RequestParam(defaultValue = "30") int days,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            BasicResponse response = subscriptionService.getExpiringSubscriptions(days, page, size);
+            return ResponseEntity.status(HttpStatus.OK).body(response);
+        } catch (BasicException e) {
+            return ResponseEntity.status(e.getResponse().getStatus()).body(e.getResponse());
+        }
+    }
+}
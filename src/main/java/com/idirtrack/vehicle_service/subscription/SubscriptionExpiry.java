@@ -0,0 +1,28 @@
+package com.idirtrack.vehicle_service.subscription;
+
+import java.sql.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The latest subscription of a boitier, with what is needed to notify its
+ * renewal: the device and sim of the boitier, and its vehicle and client if it
+ * is installed. Read with a JPQL projection, without loading the entities.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SubscriptionExpiry {
+    private Long subscriptionId;
+    private Date startDate;
+    private Date endDate;
+    private Long boitierId;
+    private String imei;
+    private String phone;
+    private Long vehicleId;
+    private String matricule;
+    private Long clientMicroserviceId;
+    private String clientName;
+}
@@ -0,0 +1,113 @@
+package com.idirtrack.vehicle_service.subscription;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.idirtrack.vehicle_service.scheduling.TaskLeaseRepository;
+
+/**
+ * Background scan of the subscriptions to renew.
+ *
+ * The latest subscriptions ending in the next days are read in chunks, with a
+ * keyset on their end date and id, and each chunk is published as a
+ * {@link SubscriptionRenewalNotice}, written to the outbox of the notices by
+ * the {@link SubscriptionNoticeOutbox}. A chunk is a projection of the subscriptions, the entities are never loaded,
+ * so the memory used by a scan does not grow with the fleet. The scan runs
+ * once a month by default, the notice days should cover the time until the
+ * next scan. The schedule fires on every instance, only the instance claiming
+ * the lease of the scan runs it.
+ */
+@Component
+public class SubscriptionExpiryScanner {
+
+        @Autowired
+        private SubscriptionRepository subscriptionRepository;
+
+        @Autowired
+        private ApplicationEventPublisher eventPublisher;
+
+        @Autowired
+        private TaskLeaseRepository taskLeaseRepository;
+
+        @Value("${subscription.expiry.notice-days:31}")
+        private int noticeDays;
+
+        @Value("${subscription.expiry.chunk-size:500}")
+        private int chunkSize;
+
+        @Value("${subscription.expiry.scan-lease:1h}")
+        private Duration scanLease;
+
+        private static final String SCAN_LEASE = "subscription-expiry-scan";
+
+        // The owner of the leases taken by this instance
+        private final String instanceId = UUID.randomUUID().toString();
+
+        private static final Logger logger = LoggerFactory.getLogger(SubscriptionExpiryScanner.class);
+
+        /**
+         * Scan the subscriptions ending from today, if no other instance is scanning
+         * them
+         *
+         * The lease is not released after the scan, it ends after the scan lease, so
+         * the instances firing a bit later do not scan again.
+         */
+        @Scheduled(cron = "${subscription.expiry.scan-cron:0 0 6 1 * *}")
+        public void scanExpiring() {
+                Instant now = Instant.now();
+                if (taskLeaseRepository.claim(SCAN_LEASE, instanceId, now, now.plus(scanLease)) == 0) {
+                        logger.info("The subscription expiry scan is run by another instance");
+                        return;
+                }
+                scanExpiring(LocalDate.now());
+        }
+
+        /**
+         * Publish the renewal notices of the subscriptions ending in the notice days
+         *
+         * @param today the first day of the scan
+         * @return the number of subscriptions notified
+         */
+        public int scanExpiring(LocalDate today) {
+                Date from = Date.valueOf(today);
+                Date to = Date.valueOf(today.plusDays(noticeDays));
+
+                // Start before the first subscription of the range
+                Date afterEndDate = from;
+                Long afterId = 0L;
+                int notified = 0;
+                while (true) {
+                        List<SubscriptionExpiry> chunk = subscriptionRepository.findExpiringAfter(from, to,
+                                        afterEndDate, afterId, Limit.of(chunkSize));
+                        if (chunk.isEmpty()) {
+                                break;
+                        }
+                        eventPublisher.publishEvent(new SubscriptionRenewalNotice(chunk));
+                        notified += chunk.size();
+                        if (chunk.size() < chunkSize) {
+                                break;
+                        }
+
+                        // Continue after the last subscription of the chunk
+                        SubscriptionExpiry last = chunk.get(chunk.size() - 1);
+                        afterEndDate = last.getEndDate();
+                        afterId = last.getSubscriptionId();
+                }
+
+                logger.info("Published the renewal notices of " + notified + " subscriptions ending before " + to);
+                return notified;
+        }
+}
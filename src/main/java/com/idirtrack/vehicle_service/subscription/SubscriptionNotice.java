@@ -0,0 +1,40 @@
+package com.idirtrack.vehicle_service.subscription;
+
+import java.sql.Date;
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A renewal notice of a subscription, waiting in the outbox to be sent to the
+ * client.
+ *
+ * The notices are written by the {@link SubscriptionNoticeOutbox} from the
+ * expiry scans, at most one per subscription, and are sent while their sent
+ * date is empty.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "subscription_renewal_notices")
+public class SubscriptionNotice {
+
+    @Id
+    private Long subscriptionId;
+
+    private Long boitierId;
+    private Long vehicleId;
+    private Long clientMicroserviceId;
+    private Date endDate;
+
+    private Instant createdAt;
+    private Instant sentAt;
+}
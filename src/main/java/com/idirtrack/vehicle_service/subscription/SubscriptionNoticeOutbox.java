@@ -0,0 +1,74 @@
+package com.idirtrack.vehicle_service.subscription;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+/**
+ * Listener writing the renewal notices published by the expiry scan to the
+ * outbox.
+ *
+ * The subscriptions still ending in the notice days are found again by the
+ * next scans, so the ones already notified are skipped and each subscription
+ * gets a single notice. The notices of a chunk are inserted with one multi-row
+ * INSERT statement.
+ */
+@Component
+public class SubscriptionNoticeOutbox {
+
+    @Autowired
+    private SubscriptionNoticeRepository subscriptionNoticeRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Write the notices of the chunk not yet written
+     *
+     * @param notice the chunk of subscriptions to notify
+     */
+    @EventListener
+    @Transactional
+    public void write(SubscriptionRenewalNotice notice) {
+        // Skip the subscriptions notified by an earlier scan
+        Set<Long> notified = new HashSet<>(subscriptionNoticeRepository.findNotifiedIds(
+                notice.getSubscriptions().stream().map(SubscriptionExpiry::getSubscriptionId).toList()));
+        List<SubscriptionExpiry> subscriptions = notice.getSubscriptions().stream()
+                .filter(subscription -> !notified.contains(subscription.getSubscriptionId()))
+                .toList();
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+
+        // One row of values per notice
+        StringBuilder sql = new StringBuilder("INSERT INTO subscription_renewal_notices (subscription_id, "
+                + "boitier_id, vehicle_id, client_microservice_id, end_date, created_at) VALUES ");
+        for (int i = 0; i < subscriptions.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?)");
+        }
+
+        // The instant is bound by Hibernate, like the one of the saved notices
+        Instant now = Instant.now();
+        Query query = entityManager.createNativeQuery(sql.toString());
+        int position = 1;
+        for (SubscriptionExpiry subscription : subscriptions) {
+            query.setParameter(position++, subscription.getSubscriptionId());
+            query.setParameter(position++, subscription.getBoitierId());
+            query.setParameter(position++, subscription.getVehicleId());
+            query.setParameter(position++, subscription.getClientMicroserviceId());
+            query.setParameter(position++, subscription.getEndDate());
+            query.setParameter(position++, now);
+        }
+        query.executeUpdate();
+    }
+}
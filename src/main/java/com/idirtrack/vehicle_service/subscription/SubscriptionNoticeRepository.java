@@ -0,0 +1,17 @@
+package com.idirtrack.vehicle_service.subscription;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SubscriptionNoticeRepository extends JpaRepository<SubscriptionNotice, Long> {
+
+    // The subscriptions among the given ones already notified
+    @Query("SELECT n.subscriptionId FROM SubscriptionNotice n WHERE n.subscriptionId IN :subscriptionIds")
+    List<Long> findNotifiedIds(@Param("subscriptionIds") Collection<Long> subscriptionIds);
+}
@@ -0,0 +1,16 @@
+package com.idirtrack.vehicle_service.subscription;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Application event of a chunk of subscriptions to renew, published by the
+ * {@link SubscriptionExpiryScanner}
+ */
+@Getter
+@AllArgsConstructor
+public class SubscriptionRenewalNotice {
+    private final List<SubscriptionExpiry> subscriptions;
+}
@@ -1,8 +1,18 @@
 package com.idirtrack.vehicle_service.subscription;
 
+import java.sql.Date;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.idirtrack.vehicle_service.boitier.Boitier;
 
@@ -11,5 +21,45 @@ public interface SubscriptionRepository extends JpaRepository<Subscription, Long
     List<Subscription> findAllByBoitier(Boitier boitier);
     //find all subscriptions by boitier id
     List<Subscription> findAllByBoitierId(Long boitierId);
+
+    // Find the latest subscription of a boitier, the one ending last, with a top-1 read of the
+    // (boitier_id, end_date) index
+    Optional<Subscription> findFirstByBoitierIdOrderByEndDateDescIdDesc(Long boitierId);
+
+    // Find the latest subscription of each boitier in the list in one query, one top-1 read of the
+    // (boitier_id, end_date) index per boitier
+    @Query("SELECT s FROM Subscription s WHERE s.boitier.id IN :boitierIds "
+            + "AND s.id = (SELECT s2.id FROM Subscription s2 WHERE s2.boitier.id = s.boitier.id "
+            + "ORDER BY s2.endDate DESC, s2.id DESC LIMIT 1)")
+    List<Subscription> findLatestByBoitierIds(@Param("boitierIds") List<Long> boitierIds);
+
+    // Delete all the subscriptions of the boitiers in the list in one statement
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Subscription s WHERE s.boitier.id IN :boitierIds")
+    int deleteAllByBoitierIds(@Param("boitierIds") Collection<Long> boitierIds);
     
+
+    // The latest subscriptions ending between two dates, with their boitier, vehicle and client, without
+    // loading the entities. The range is read from the end_date index, and a subscription is the latest
+    // of its boitier when no other one ends after it, an index probe on (boitier_id, end_date).
+    String SELECT_EXPIRING = "SELECT new com.idirtrack.vehicle_service.subscription.SubscriptionExpiry("
+            + "s.id, s.startDate, s.endDate, b.id, d.imei, sim.phone, v.id, v.matricule, "
+            + "c.clientMicroserviceId, c.name) "
+            + "FROM Subscription s JOIN s.boitier b LEFT JOIN b.device d LEFT JOIN b.sim sim "
+            + "LEFT JOIN b.vehicle v LEFT JOIN v.client c "
+            + "WHERE s.endDate BETWEEN :from AND :to "
+            + "AND NOT EXISTS (SELECT s2.id FROM Subscription s2 WHERE s2.boitier.id = b.id "
+            + "AND (s2.endDate > s.endDate OR (s2.endDate = s.endDate AND s2.id > s.id))) ";
+
+    // Slices of the expiring subscriptions, the first to end first, the total count is not queried
+    @Query(SELECT_EXPIRING + "ORDER BY s.endDate, s.id")
+    Slice<SubscriptionExpiry> findExpiring(@Param("from") Date from, @Param("to") Date to, Pageable pageable);
+
+    // Keyset variant: the expiring subscriptions after the (end date, id) of the previous chunk
+    @Query(SELECT_EXPIRING
+            + "AND (s.endDate > :afterEndDate OR (s.endDate = :afterEndDate AND s.id > :afterId)) "
+            + "ORDER BY s.endDate, s.id")
+    List<SubscriptionExpiry> findExpiringAfter(@Param("from") Date from, @Param("to") Date to,
+            @Param("afterEndDate") Date afterEndDate, @Param("afterId") Long afterId, Limit limit);
 }
@@ -0,0 +1,90 @@
+package com.idirtrack.vehicle_service.subscription;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.basic.MessageType;
+import com.idirtrack.vehicle_service.basic.MetaData;
+import com.idirtrack.vehicle_service.utils.CursorUtils;
+
+@Service
+public class SubscriptionService {
+
+        @Autowired
+        private SubscriptionRepository subscriptionRepository;
+
+        @Value("${subscription.expiry.max-days:366}")
+        private int maxDays;
+
+        @Value("${subscription.expiry.max-page-size:1000}")
+        private int maxPageSize;
+
+        /**
+         * Retrieves a page of the subscriptions ending in the next days.
+         *
+         * Only the latest subscription of each boitier is returned, a boitier already
+         * renewed is not expiring. The subscriptions are read with a projection, the
+         * first to end first, and the total count is not queried.
+         *
+         * @param days the number of days from today, today included
+         * @param page the page number (1-based index) to retrieve
+         * @param size the number of subscriptions per page
+         * @return a {@link BasicResponse} with the list of {@link SubscriptionExpiry}
+         *         and the pagination metadata
+         * @throws BasicException if the days, page or size are out of range or no
+         *                        subscription is found for the page
+         */
+        public BasicResponse getExpiringSubscriptions(int days, int page, int size) throws BasicException {
+                if (days < 0 || days > maxDays) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("The days must be between 0 and " + maxDays)
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .build());
+                }
+                if (page < 1) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("The page must be at least 1")
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .build());
+                }
+                CursorUtils.checkSize(size, maxPageSize);
+
+                // Get the slice of the subscriptions ending between today and the last day
+                LocalDate today = LocalDate.now();
+                Slice<SubscriptionExpiry> subscriptions = subscriptionRepository.findExpiring(Date.valueOf(today),
+                                Date.valueOf(today.plusDays(days)), PageRequest.of(page - 1, size));
+
+                // Throw exception if the subscriptions list is empty
+                if (subscriptions.getContent().isEmpty()) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("No expiring subscriptions found")
+                                        .messageType(MessageType.INFO)
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .build());
+                }
+
+                // Build the metadata object
+                MetaData metaData = MetaData.builder()
+                                .currentPage(subscriptions.getNumber() + 1)
+                                .size(subscriptions.getSize())
+                                .hasNext(subscriptions.hasNext())
+                                .build();
+
+                return BasicResponse.builder()
+                                .content(subscriptions.getContent())
+                                .metadata(metaData)
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+}
@@ -1,52 +1,95 @@
 package com.idirtrack.vehicle_service.traccar;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import com.idirtrack.vehicle_service.traccar.request.TracCarDeviceRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
 @Service
 public class TracCarService {
 
+    // Pooled client of TracCar, with the endpoint, the timeouts and the basic auth
+    // configured in WebClientConfig
     @Autowired
-    private RestTemplate restTemplate;
+    @Qualifier("tracCarWebClient")
+    private WebClient tracCarWebClient;
+
+    // Registrations in flight at once, kept under the connections of the pool so
+    // they reuse the open connections
+    @Value("${traccar.bulk.max-concurrency:32}")
+    private int bulkMaxConcurrency;
 
     private static final Logger logger = LoggerFactory.getLogger(TracCarService.class);
 
     public boolean createDevice(String clientName, String imei, String clientCompany, String vehicleMatricule) {
-        String url = "http://152.228.219.146:8082/api/devices";
-
-        String name = clientName + " - " + clientCompany + " - " + vehicleMatricule;
-
-        // Create the request body
-        TracCarDeviceRequest request = TracCarDeviceRequest.builder()
-                .name(name)
-                .uniqueId(imei)
-                .build();
-
-        // Set headers
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        // add basic auth with username and password idirtech idirtech
-        headers.setBasicAuth("idirtech ", "idirtech1");
+        return Boolean.TRUE.equals(
+                createDeviceAsync(TracCarDeviceRequest.of(clientName, imei, clientCompany, vehicleMatricule)).block());
+    }
 
-        // Create the HttpEntity
-        HttpEntity<TracCarDeviceRequest> entity = new HttpEntity<>(request, headers);
+    /**
+     * Create many devices in TracCar, at most {@code traccar.bulk.max-concurrency}
+     * at once, until a deadline
+     * 
+     * @param devices  the devices to create, with distinct unique ids
+     * @param deadline the maximum time to wait for all the devices
+     * @return by unique id, true if the device was created or already existed,
+     *         false if TracCar refused it or did not answer before the deadline
+     */
+    public Map<String, Boolean> createDevices(List<TracCarDeviceRequest> devices, Duration deadline) {
+        Map<String, Boolean> created = new HashMap<>();
+        devices.forEach(device -> created.put(device.getUniqueId(), false));
+        Flux.fromIterable(devices)
+                .flatMap(device -> createDeviceAsync(device).map(isCreated -> Map.entry(device.getUniqueId(), isCreated)),
+                        bulkMaxConcurrency)
+                // The devices still waiting at the deadline are not created
+                .take(deadline)
+                .doOnNext(result -> created.put(result.getKey(), result.getValue()))
+                .blockLast();
+        return created;
+    }
 
+    private Mono<Boolean> createDeviceAsync(TracCarDeviceRequest request) {
         // Send the POST request
-        try {
-            restTemplate.postForObject(url, entity, String.class);
-            return true;
-        } catch (Exception e) {
-            logger.error("Error creating device: " + e.getMessage());
+        return tracCarWebClient.post()
+                .uri("/api/devices")
+                .bodyValue(request)
+                .retrieve()
+                .toBodilessEntity()
+                .map(entity -> true)
+                .onErrorResume(e -> {
+                    // A device created by a previous attempt is not an error
+                    if (isAlreadyExists(e)) {
+                        return Mono.just(true);
+                    }
+                    logger.error("Error creating device: " + e.getMessage());
+                    return Mono.just(false);
+                });
+    }
+
+    /**
+     * TracCar refuses a device whose unique id is used with a 400 and the unique
+     * constraint violation of its database
+     */
+    private boolean isAlreadyExists(Throwable e) {
+        if (!(e instanceof WebClientResponseException response) || response.getStatusCode() != HttpStatus.BAD_REQUEST) {
             return false;
         }
+        String body = response.getResponseBodyAsString().toLowerCase();
+        return body.contains("duplicate") || body.contains("unique") || body.contains("already exists");
     }
 }
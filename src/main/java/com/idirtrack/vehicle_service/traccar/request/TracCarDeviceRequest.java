@@ -12,4 +12,13 @@ import lombok.NoArgsConstructor;
 public class TracCarDeviceRequest {
     private String name;
     private String uniqueId;
+
+    // Build the TracCar device of a boitier, named after its client and vehicle
+    public static TracCarDeviceRequest of(String clientName, String imei, String clientCompany,
+            String vehicleMatricule) {
+        return TracCarDeviceRequest.builder()
+                .name(clientName + " - " + clientCompany + " - " + vehicleMatricule)
+                .uniqueId(imei)
+                .build();
+    }
 }
@@ -0,0 +1,67 @@
+package com.idirtrack.vehicle_service.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.http.HttpStatus;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.basic.MessageType;
+
+/**
+ * Encode and decode the opaque cursors used by the keyset pagination mode.
+ * A cursor wraps the id of the last row of the previous slice.
+ */
+public class CursorUtils {
+
+    private static final String PREFIX = "id:";
+
+    public static String encode(Long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor to the id to seek after
+     * 
+     * @param cursor the cursor sent by the client, empty for the first slice
+     * @return the id, or null if the cursor is empty
+     * @throws BasicException if the cursor is malformed
+     */
+    public static Long decode(String cursor) throws BasicException {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!value.startsWith(PREFIX)) {
+                throw new IllegalArgumentException(value);
+            }
+            return Long.valueOf(value.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new BasicException(BasicResponse.builder()
+                    .message("Invalid cursor")
+                    .messageType(MessageType.ERROR)
+                    .status(HttpStatus.BAD_REQUEST)
+                    .build());
+        }
+    }
+
+    /**
+     * Check the size of a slice, before one extra row is fetched for it
+     * 
+     * @param size    the number of rows per slice sent by the client
+     * @param maxSize the largest size allowed
+     * @throws BasicException if the size is not between 1 and the max size
+     */
+    public static void checkSize(int size, int maxSize) throws BasicException {
+        if (size < 1 || size > maxSize) {
+            throw new BasicException(BasicResponse.builder()
+                    .message("The size must be between 1 and " + maxSize)
+                    .messageType(MessageType.ERROR)
+                    .status(HttpStatus.BAD_REQUEST)
+                    .build());
+        }
+    }
+}
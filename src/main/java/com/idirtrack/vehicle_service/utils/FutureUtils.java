@@ -0,0 +1,29 @@
+package com.idirtrack.vehicle_service.utils;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class FutureUtils {
+
+    /**
+     * Wait until all the calls are done or the deadline is reached, whatever
+     * their results
+     * 
+     * @param calls    the calls
+     * @param deadline the maximum time to wait
+     */
+    public static void awaitAll(Collection<? extends CompletableFuture<?>> calls, Duration deadline) {
+        try {
+            CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new))
+                    .get(deadline.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // The results are checked by the caller
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
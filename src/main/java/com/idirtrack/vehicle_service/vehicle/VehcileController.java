@@ -4,7 +4,9 @@ import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -14,12 +16,14 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.idirtrack.vehicle_service.basic.BasicException;
 import com.idirtrack.vehicle_service.basic.BasicResponse;
 import com.idirtrack.vehicle_service.utils.Error;
 import com.idirtrack.vehicle_service.utils.ValidationUtil;
 import com.idirtrack.vehicle_service.utils.ValidationUtils;
+import com.idirtrack.vehicle_service.vehicle.https.VehicleBatchRequest;
 import com.idirtrack.vehicle_service.vehicle.https.VehicleRequest;
 
 import jakarta.validation.Valid;
@@ -31,6 +35,12 @@ public class VehcileController {
     @Autowired
     private VehicleService vehicleService;
 
+    @Autowired
+    private VehicleBatchService vehicleBatchService;
+
+    @Autowired
+    private VehicleExportService vehicleExportService;
+
     @PostMapping("/")
     public ResponseEntity<BasicResponse> createNewVehicle(@Valid @RequestBody VehicleRequest request,
             BindingResult bindingResult) {
@@ -65,6 +75,46 @@ public class VehcileController {
 
     }
 
+    /**
+     * Creates a batch of vehicles.
+     * 
+     * This endpoint validates the whole batch with set-based queries and returns
+     * one result per vehicle, a failed vehicle does not fail the others. See
+     * {@link VehicleBatchService#createVehiclesBatch(List)}.
+     * 
+     * @param request the vehicles to create
+     * @return a ResponseEntity containing the BasicResponse with the result of
+     *         each vehicle
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<BasicResponse> createVehiclesBatch(@Valid @RequestBody VehicleBatchRequest request,
+            BindingResult bindingResult) {
+        // Validate the request body
+        if (bindingResult.hasErrors()) {
+            List<Error> errors = ValidationUtils.extractErrorsFromBindingResult(bindingResult);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(BasicResponse.builder()
+                    .message("Validation Error")
+                    .errorsList(errors)
+                    .build());
+        }
+        // Try to create the vehicles
+        try {
+            BasicResponse response = vehicleBatchService.createVehiclesBatch(request.getVehicles());
+            return ResponseEntity.status(response.getStatus()).body(response);
+        }
+        // Catch and handle BasicException
+        catch (BasicException e) {
+            return ResponseEntity.status(e.getResponse().getStatus()).body(e.getResponse());
+        }
+        // Catch and handle any other exception
+        catch (Exception e) {
+            BasicResponse response = BasicResponse.builder()
+                    .message("Internal Server Error")
+                    .build();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
     /**
      * Retrieves a paginated list of vehicles.
      * 
@@ -77,7 +127,7 @@ public class VehcileController {
      * appropriate HTTP status and response body.
      * 
      * The endpoint performs the following actions:
-     * 1. Calls the {@link VehicleService#getAllVehicles(int, int)} method with the
+     * 1. Calls the {@link VehicleService#getAllVehicles(int, int, boolean)} method with the
      * specified
      * page number and page size.
      * 2. Returns a ResponseEntity with the status and body from the service
@@ -88,8 +138,15 @@ public class VehcileController {
      * server
      * error status and a generic error message.
      * 
-     * @param page the page number to retrieve (default is 1)
-     * @param size the number of vehicles per page (default is 5)
+     * When the {@code after} parameter is present (empty for the first slice),
+     * the keyset mode of {@link VehicleService#getAllVehiclesAfter(String, int)}
+     * is used instead of the page number.
+     * 
+     * @param page      the page number to retrieve (default is 1)
+     * @param size      the number of vehicles per page (default is 5)
+     * @param after     the cursor of the keyset mode (optional)
+     * @param withTotal whether to compute the total pages (default is true), set
+     *                  to false to skip the count
      * @return a ResponseEntity containing the BasicResponse with the list of
      *         vehicles,
      *         pagination metadata, and status
@@ -97,9 +154,13 @@ public class VehcileController {
     @GetMapping("/")
     public ResponseEntity<BasicResponse> getAllVehicles(
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "5") int size) {
+            @RequestParam(defaultValue = "5") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "true") boolean withTotal) {
         try {
-            BasicResponse response = vehicleService.getAllVehicles(page, size);
+            BasicResponse response = after != null
+                    ? vehicleService.getAllVehiclesAfter(after, size)
+                    : vehicleService.getAllVehicles(page, size, withTotal);
             return ResponseEntity.status(response.getStatus()).body(response);
         } catch (BasicException e) {
             return ResponseEntity.status(e.getResponse().getStatus()).body(e.getResponse());
@@ -111,6 +172,23 @@ public class VehcileController {
         }
     }
 
+    /**
+     * Exports all the vehicles with their boitiers as NDJSON.
+     * 
+     * This endpoint streams one vehicle per line, with its client, boitiers,
+     * devices, sims and latest subscription, while they are read from the
+     * database. See {@link VehicleExportService#exportVehicles(java.io.OutputStream)}.
+     * 
+     * @return a ResponseEntity streaming the vehicles
+     */
+    @GetMapping("/export/")
+    public ResponseEntity<StreamingResponseBody> exportVehicles() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"vehicles.ndjson\"")
+                .body(vehicleExportService::exportVehicles);
+    }
+
     /**
      * Retrieves a vehicle by ID.
      * 
@@ -0,0 +1,329 @@
+package com.idirtrack.vehicle_service.vehicle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.basic.MessageType;
+import com.idirtrack.vehicle_service.boitier.Boitier;
+import com.idirtrack.vehicle_service.boitier.BoitierRepository;
+import com.idirtrack.vehicle_service.cache.CountCache;
+import com.idirtrack.vehicle_service.client.Client;
+import com.idirtrack.vehicle_service.client.ClientService;
+import com.idirtrack.vehicle_service.outbox.StockStatusOutbox;
+import com.idirtrack.vehicle_service.stock.StockItemType;
+import com.idirtrack.vehicle_service.traccar.TracCarService;
+import com.idirtrack.vehicle_service.traccar.request.TracCarDeviceRequest;
+import com.idirtrack.vehicle_service.vehicle.https.VehicleBatchItemResponse;
+import com.idirtrack.vehicle_service.vehicle.https.VehicleRequest;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Service for creating many vehicles in one request.
+ *
+ * Unlike {@link VehicleService#createNewVehicle(VehicleRequest)}, which is
+ * called once per vehicle, this service validates the whole batch with
+ * set-based queries, persists the valid vehicles in one transaction with JDBC
+ * batches, and calls the user microservice and TracCar concurrently. A failed vehicle does not fail the
+ * batch, every vehicle gets its own result.
+ */
+@Service
+public class VehicleBatchService {
+
+        @Autowired
+        private VehicleRepository vehicleRepository;
+
+        @Autowired
+        private VehicleBatchWriter vehicleBatchWriter;
+
+        @Autowired
+        private BoitierRepository boitierRepository;
+
+        @Autowired
+        private ClientService clientService;
+
+        @Autowired
+        private TracCarService tracCarService;
+
+        @Autowired
+        private StockStatusOutbox stockStatusOutbox;
+
+        @Autowired
+        private CountCache countCache;
+
+        @Autowired
+        private TransactionTemplate transactionTemplate;
+
+        @Value("${vehicle.batch.max-size:1000}")
+        private int maxSize;
+
+        // Clients resolved at once, under the bulkhead of the user microservice
+        @Value("${vehicle.batch.max-concurrency:16}")
+        private int maxConcurrency;
+
+        @Value("${vehicle.batch.deadline:60s}")
+        private Duration remoteCallsDeadline;
+
+        private static final Logger logger = LoggerFactory.getLogger(VehicleBatchService.class);
+
+        /**
+         * Create a batch of vehicles.
+         *
+         * This method performs the following steps:
+         * 1. Finds the matricules already used with one IN query, and the boitiers of
+         * the whole batch with one query.
+         * 2. Rejects the vehicles whose matricule is used or repeated, or whose
+         * boitiers are missing, attached or claimed by a previous vehicle of the batch.
+         * 3. Resolves the clients through the cache of the client service, at most
+         * {@code vehicle.batch.max-concurrency} at once, the missing ones are fetched
+         * from the user microservice and saved.
+         * 4. Saves the boitiers of the whole batch in TracCar with the bulk
+         * registration, a device already in TracCar counts as saved.
+         * 5. Saves the vehicles, attaches their boitiers and records the status
+         * changes of their devices and sims for the stock microservice in one
+         * transaction. A vehicle whose matricule was taken or whose boitier was
+         * attached meanwhile by another request is undone and reported as a conflict.
+         *
+         * @param requests the vehicles to create
+         * @return a {@link BasicResponse} with one {@link VehicleBatchItemResponse}
+         *         per vehicle, in the order of the request
+         * @throws BasicException if the batch is larger than the allowed size
+         */
+        public BasicResponse createVehiclesBatch(List<VehicleRequest> requests) throws BasicException {
+                if (requests.size() > maxSize) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("A batch can not contain more than " + maxSize + " vehicles")
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .build());
+                }
+
+                VehicleBatchItemResponse[] results = new VehicleBatchItemResponse[requests.size()];
+
+                // Find the used matricules and the boitiers of the whole batch
+                Set<String> usedMatricules = new HashSet<>(vehicleRepository.findExistingMatricules(
+                                requests.stream().map(VehicleRequest::getMatricule).collect(Collectors.toSet())));
+                Map<Long, Boitier> boitiersById = boitierRepository.findAllByIdIn(
+                                requests.stream().flatMap(request -> request.getBoitiersIds().stream())
+                                                .collect(Collectors.toSet()))
+                                .stream()
+                                .collect(Collectors.toMap(Boitier::getId, boitier -> boitier));
+
+                // Validate each vehicle against the database and the previous vehicles of the batch
+                Map<Integer, List<Boitier>> validVehicles = new LinkedHashMap<>();
+                Set<Long> claimedBoitiers = new HashSet<>();
+                for (int i = 0; i < requests.size(); i++) {
+                        VehicleRequest request = requests.get(i);
+
+                        if (usedMatricules.contains(request.getMatricule())) {
+                                results[i] = failure(i, request, HttpStatus.CONFLICT, MessageType.ERROR,
+                                                "Vehicle already exists");
+                                continue;
+                        }
+
+                        List<Boitier> boitiers = new ArrayList<>();
+                        VehicleBatchItemResponse failure = null;
+                        for (Long boitierId : request.getBoitiersIds()) {
+                                Boitier boitier = boitiersById.get(boitierId);
+                                if (boitier == null) {
+                                        failure = failure(i, request, HttpStatus.NOT_FOUND, MessageType.ERROR,
+                                                        "Boitier not found");
+                                        break;
+                                }
+                                if (boitier.getVehicle() != null || claimedBoitiers.contains(boitierId)
+                                                || boitiers.contains(boitier)) {
+                                        failure = failure(i, request, HttpStatus.CONFLICT, MessageType.WARNING,
+                                                        "Boitier with the phone " + boitier.getSim().getPhone()
+                                                                        + " and device IMEI " + boitier.getDevice().getImei()
+                                                                        + " already attached to a vehicle");
+                                        break;
+                                }
+                                boitiers.add(boitier);
+                        }
+                        if (failure != null) {
+                                results[i] = failure;
+                                continue;
+                        }
+
+                        // Reserve the matricule and the boitiers for this vehicle
+                        usedMatricules.add(request.getMatricule());
+                        boitiers.forEach(boitier -> claimedBoitiers.add(boitier.getId()));
+                        validVehicles.put(i, boitiers);
+                }
+
+                // Resolve the clients of the valid vehicles
+                Map<Long, Client> clients = resolveClients(validVehicles.keySet().stream()
+                                .map(i -> requests.get(i).getClientMicroserviceId())
+                                .collect(Collectors.toSet()));
+                validVehicles.keySet().removeIf(i -> {
+                        if (clients.containsKey(requests.get(i).getClientMicroserviceId())) {
+                                return false;
+                        }
+                        results[i] = failure(i, requests.get(i), HttpStatus.NOT_FOUND, MessageType.ERROR,
+                                        "Client not found");
+                        return true;
+                });
+
+                // Save the boitiers of all the vehicles in TracCar, concurrently over the pooled
+                // connections, until the deadline
+                List<TracCarDeviceRequest> tracCarDevices = new ArrayList<>();
+                validVehicles.forEach((i, boitiers) -> {
+                        VehicleRequest request = requests.get(i);
+                        Client client = clients.get(request.getClientMicroserviceId());
+                        boitiers.forEach(boitier -> tracCarDevices.add(TracCarDeviceRequest.of(
+                                        client.getName(),
+                                        boitier.getDevice().getImei(),
+                                        client.getCompany(),
+                                        request.getMatricule())));
+                });
+                Map<String, Boolean> createdDevices = tracCarService.createDevices(tracCarDevices,
+                                remoteCallsDeadline);
+                validVehicles.entrySet().removeIf(vehicle -> {
+                        if (vehicle.getValue().stream().allMatch(boitier -> Boolean.TRUE
+                                        .equals(createdDevices.get(boitier.getDevice().getImei())))) {
+                                return false;
+                        }
+                        int i = vehicle.getKey();
+                        results[i] = failure(i, requests.get(i), HttpStatus.INTERNAL_SERVER_ERROR,
+                                        MessageType.WARNING,
+                                        "Error while saving the boitier in TracCar Microservice");
+                        return true;
+                });
+
+                // Save the vehicles and attach their boitiers in one transaction
+                Map<Integer, Vehicle> vehicles = new LinkedHashMap<>();
+                transactionTemplate.executeWithoutResult(status -> {
+                        validVehicles.forEach((i, boitiers) -> vehicles.put(i, Vehicle.builder()
+                                        .matricule(requests.get(i).getMatricule())
+                                        .client(clients.get(requests.get(i).getClientMicroserviceId()))
+                                        .type(requests.get(i).getType())
+                                        .build()));
+                        List<Vehicle> takenMatricules = vehicleBatchWriter.insertVehicles(
+                                        new ArrayList<>(vehicles.values()));
+
+                        // A matricule taken by a concurrent request only fails its vehicle
+                        vehicles.entrySet().removeIf(vehicle -> {
+                                if (!takenMatricules.contains(vehicle.getValue())) {
+                                        return false;
+                                }
+                                int i = vehicle.getKey();
+                                results[i] = failure(i, requests.get(i), HttpStatus.CONFLICT, MessageType.ERROR,
+                                                "Vehicle already exists");
+                                validVehicles.remove(i);
+                                return true;
+                        });
+
+                        // Attach the boitiers of each vehicle in one statement, only the boitiers still
+                        // free are attached, so a boitier taken by a concurrent request fails its vehicle
+                        List<Long> conflictingVehicles = new ArrayList<>();
+                        vehicles.entrySet().removeIf(vehicle -> {
+                                int i = vehicle.getKey();
+                                List<Long> boitierIds = validVehicles.get(i).stream().map(Boitier::getId).toList();
+                                if (boitierRepository.attachToVehicle(vehicle.getValue(), boitierIds) == boitierIds
+                                                .size()) {
+                                        return false;
+                                }
+                                conflictingVehicles.add(vehicle.getValue().getId());
+                                results[i] = failure(i, requests.get(i), HttpStatus.CONFLICT, MessageType.WARNING,
+                                                "A boitier was attached to another vehicle in the meantime");
+                                return true;
+                        });
+
+                        // Undo the vehicles whose boitiers were taken, with the boitiers they got
+                        if (!conflictingVehicles.isEmpty()) {
+                                boitierRepository.detachFromVehicles(conflictingVehicles);
+                                vehicleRepository.deleteAllByIdInBatch(conflictingVehicles);
+                                validVehicles.keySet().retainAll(vehicles.keySet());
+                        }
+
+                        // Change the status of the boitiers to installed in the stock microservice
+                        List<Boitier> attachedBoitiers = validVehicles.values().stream()
+                                        .flatMap(List::stream)
+                                        .toList();
+                        stockStatusOutbox.statusesChanged(StockItemType.DEVICE, attachedBoitiers.stream()
+                                        .map(boitier -> boitier.getDevice().getDeviceMicroserviceId()).toList(),
+                                        "installed");
+                        stockStatusOutbox.statusesChanged(StockItemType.SIM, attachedBoitiers.stream()
+                                        .map(boitier -> boitier.getSim().getSimMicroserviceId()).toList(),
+                                        "installed");
+                });
+
+                // The vehicles count changed and the boitiers are no longer unassigned
+                countCache.invalidate(CountCache.VEHICLES);
+                countCache.invalidate(CountCache.BOITIERS);
+
+                vehicles.forEach((i, vehicle) -> results[i] = VehicleBatchItemResponse.builder()
+                                .index(i)
+                                .matricule(vehicle.getMatricule())
+                                .vehicleId(vehicle.getId())
+                                .status(HttpStatus.CREATED)
+                                .messageType(MessageType.INFO)
+                                .message("Vehicle created successfully")
+                                .build());
+
+                long created = validVehicles.size();
+                return BasicResponse.builder()
+                                .content(List.of(results))
+                                .message(created + " of " + requests.size() + " vehicles created")
+                                .messageType(created == requests.size() ? MessageType.INFO : MessageType.WARNING)
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
+        /**
+         * Get or create the local client of each client microservice id, through the
+         * cache of the client service
+         *
+         * @return the clients found, by client microservice id
+         */
+        private Map<Long, Client> resolveClients(Set<Long> clientMicroserviceIds) {
+                // The clients are resolved concurrently, the cache of the client service
+                // loads each missing client once
+                Map<Long, Client> clients = new ConcurrentHashMap<>();
+                Flux.fromIterable(clientMicroserviceIds)
+                                .flatMap(clientMicroserviceId -> Mono
+                                                .fromCallable(() -> clientService.getOrCreateClient(clientMicroserviceId))
+                                                .subscribeOn(Schedulers.boundedElastic())
+                                                .doOnNext(client -> clients.put(clientMicroserviceId, client))
+                                                .onErrorResume(e -> {
+                                                        logger.error("Error while getting the client "
+                                                                        + clientMicroserviceId + ": " + e.getMessage());
+                                                        return Mono.empty();
+                                                }), maxConcurrency)
+                                // The clients still loading at the deadline are not found
+                                .take(remoteCallsDeadline)
+                                .blockLast();
+                return new HashMap<>(clients);
+        }
+
+        private VehicleBatchItemResponse failure(int index, VehicleRequest request, HttpStatus status,
+                        MessageType messageType, String message) {
+                return VehicleBatchItemResponse.builder()
+                                .index(index)
+                                .matricule(request.getMatricule())
+                                .status(status)
+                                .messageType(messageType)
+                                .message(message)
+                                .build();
+        }
+}
@@ -0,0 +1,105 @@
+package com.idirtrack.vehicle_service.vehicle;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Batched inserts of new vehicles.
+ *
+ * The vehicles table uses auto-increment ids, which stop Hibernate from
+ * batching the inserts, so the vehicles are written with one JDBC batch per
+ * chunk instead, and the generated ids are read back. Each chunk runs in a
+ * savepoint: when a matricule of the chunk was taken by a concurrent request,
+ * the chunk is undone and its vehicles are inserted one by one, so only the
+ * vehicle of the taken matricule is not inserted.
+ */
+@Repository
+public class VehicleBatchWriter {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${vehicle.batch.insert-size:500}")
+    private int insertSize;
+
+    /**
+     * Insert the vehicles, in the transaction of the caller
+     *
+     * @param vehicles the vehicles to insert, with their client, the generated
+     *                 ids are set on them
+     * @return the vehicles not inserted because their matricule is used
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Vehicle> insertVehicles(List<Vehicle> vehicles) {
+        List<Vehicle> conflicts = new ArrayList<>();
+        for (int from = 0; from < vehicles.size(); from += insertSize) {
+            List<Vehicle> chunk = vehicles.subList(from, Math.min(from + insertSize, vehicles.size()));
+            if (!insertInSavepoint(chunk)) {
+                // Find the vehicles whose matricule was taken meanwhile
+                for (Vehicle vehicle : chunk) {
+                    if (!insertInSavepoint(List.of(vehicle))) {
+                        conflicts.add(vehicle);
+                    }
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    // Insert the vehicles, or none of them if one matricule is used
+    private boolean insertInSavepoint(List<Vehicle> vehicles) {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                insert(vehicles);
+                connection.releaseSavepoint(savepoint);
+                return true;
+            } catch (DataIntegrityViolationException e) {
+                connection.rollback(savepoint);
+                return false;
+            }
+        });
+    }
+
+    // Run one JDBC batch of inserts for the vehicles, and set the generated ids
+    private void insert(List<Vehicle> vehicles) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(
+                "INSERT INTO vehicles (matricule, type, client_id) VALUES (?, ?, ?)", new String[] { "id" }),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Vehicle vehicle = vehicles.get(i);
+                        ps.setString(1, vehicle.getMatricule());
+                        ps.setString(2, vehicle.getType());
+                        ps.setLong(3, vehicle.getClient().getId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return vehicles.size();
+                    }
+                }, keyHolder);
+        List<Long> ids = keyHolder.getKeyList().stream()
+                .map(keys -> ((Number) keys.values().iterator().next()).longValue())
+                .toList();
+        for (int i = 0; i < vehicles.size(); i++) {
+            vehicles.get(i).setId(ids.get(i));
+        }
+    }
+}
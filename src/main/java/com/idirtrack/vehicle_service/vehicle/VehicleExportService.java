@@ -0,0 +1,177 @@
+package com.idirtrack.vehicle_service.vehicle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
+import com.idirtrack.vehicle_service.client.ClientDTO;
+import com.idirtrack.vehicle_service.device.DeviceDTO;
+import com.idirtrack.vehicle_service.sim.SimDTO;
+import com.idirtrack.vehicle_service.subscription.SubscriptionDTO;
+import com.idirtrack.vehicle_service.vehicle.https.VehicleResponse;
+
+/**
+ * Service for exporting the whole fleet as NDJSON.
+ *
+ * The vehicles are read with their client, boitiers, devices, sims and latest
+ * subscription in one query, on a forward-only cursor fetching a few rows at a
+ * time, and each vehicle is written to the output as soon as its rows are
+ * read. Only the current vehicle is held in memory, whatever the fleet size.
+ *
+ * On MySQL, the driver streams the rows of this statement one by one instead of
+ * reading the whole result, the other connections of the pool keep their
+ * default settings.
+ */
+@Service
+public class VehicleExportService {
+
+        // One row per boitier, or one row for a vehicle without boitiers, ordered by
+        // vehicle so the rows of a vehicle follow each other
+        private static final String SELECT_FLEET = "SELECT v.id AS vehicle_id, v.matricule, v.type AS vehicle_type, "
+                        + "c.id AS client_id, c.client_microservice_id, c.name AS client_name, c.company, "
+                        + "b.id AS boitier_id, "
+                        + "d.id AS device_id, d.imei, d.type AS device_type, d.device_microservice_id, "
+                        + "s.id AS sim_id, s.phone, s.ccid, s.operator_name, s.sim_microservice_id, "
+                        + "sub.id AS subscription_id, sub.start_date, sub.end_date "
+                        + "FROM vehicles v "
+                        + "LEFT JOIN clients c ON c.id = v.client_id "
+                        + "LEFT JOIN boitiers b ON b.vehicle_id = v.id "
+                        + "LEFT JOIN devices d ON d.id = b.device_id "
+                        + "LEFT JOIN sims s ON s.id = b.sim_id "
+                        + "LEFT JOIN subscriptions sub ON sub.id = "
+                        + "(SELECT s2.id FROM subscriptions s2 WHERE s2.boitier_id = b.id "
+                        + "ORDER BY s2.end_date DESC, s2.id DESC LIMIT 1) "
+                        + "ORDER BY v.id, b.id";
+
+        @Autowired
+        private JdbcTemplate jdbcTemplate;
+
+        @Autowired
+        private ObjectMapper objectMapper;
+
+        @Value("${vehicle.export.fetch-size:500}")
+        private int fetchSize;
+
+        /**
+         * Write all the vehicles to the output, one JSON {@link VehicleResponse} per
+         * line
+         *
+         * @param out the output, flushed after each vehicle and left open
+         * @throws IOException if the output cannot be written
+         */
+        public void exportVehicles(OutputStream out) throws IOException {
+                VehicleRowHandler handler = new VehicleRowHandler(out);
+                try {
+                        // Forward-only, read-only cursor, the rows are fetched fetchSize at a time, or
+                        // streamed by the MySQL driver, which only streams with this fetch size
+                        jdbcTemplate.query(connection -> {
+                                PreparedStatement statement = connection.prepareStatement(SELECT_FLEET,
+                                                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                                statement.setFetchSize(isMySql(connection) ? Integer.MIN_VALUE : fetchSize);
+                                return statement;
+                        }, handler);
+
+                        // Write the last vehicle
+                        handler.writeCurrent();
+                } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                }
+        }
+
+        private static boolean isMySql(Connection connection) throws SQLException {
+                return "MySQL".equals(connection.getMetaData().getDatabaseProductName());
+        }
+
+        /**
+         * Build the vehicle of the rows read, and write it when the rows of the next
+         * vehicle start
+         */
+        private class VehicleRowHandler implements RowCallbackHandler {
+
+                private final OutputStream out;
+                private VehicleResponse current;
+
+                VehicleRowHandler(OutputStream out) {
+                        this.out = out;
+                }
+
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                        // A new vehicle, write the previous one
+                        long vehicleId = rs.getLong("vehicle_id");
+                        if (current == null || current.getVehicle().getId() != vehicleId) {
+                                writeCurrent();
+                                current = VehicleResponse.builder()
+                                                .vehicle(VehicleDTO.builder()
+                                                                .id(vehicleId)
+                                                                .matricule(rs.getString("matricule"))
+                                                                .type(rs.getString("vehicle_type"))
+                                                                .build())
+                                                .client(ClientDTO.builder()
+                                                                .id(rs.getObject("client_id", Long.class))
+                                                                .clientMicroserviceId(rs.getObject("client_microservice_id", Long.class))
+                                                                .name(rs.getString("client_name"))
+                                                                .company(rs.getString("company"))
+                                                                .build())
+                                                .boitiersList(new ArrayList<>())
+                                                .build();
+                        }
+
+                        // Add the boitier of the row, if the vehicle has one
+                        Long boitierId = rs.getObject("boitier_id", Long.class);
+                        if (boitierId == null) {
+                                return;
+                        }
+                        Long subscriptionId = rs.getObject("subscription_id", Long.class);
+                        current.getBoitiersList().add(BoitierDTO.builder()
+                                        .id(boitierId)
+                                        .device(DeviceDTO.builder()
+                                                        .id(rs.getObject("device_id", Long.class))
+                                                        .imei(rs.getString("imei"))
+                                                        .type(rs.getString("device_type"))
+                                                        .deviceMicroserviceId(rs.getObject("device_microservice_id", Long.class))
+                                                        .build())
+                                        .sim(SimDTO.builder()
+                                                        .id(rs.getObject("sim_id", Long.class))
+                                                        .phone(rs.getString("phone"))
+                                                        .ccid(rs.getString("ccid"))
+                                                        .operatorName(rs.getString("operator_name"))
+                                                        .simMicroserviceId(rs.getObject("sim_microservice_id", Long.class))
+                                                        .build())
+                                        .subscription(subscriptionId == null ? null
+                                                        : SubscriptionDTO.builder()
+                                                                        .id(subscriptionId)
+                                                                        .startDate(rs.getDate("start_date"))
+                                                                        .endDate(rs.getDate("end_date"))
+                                                                        .build())
+                                        .build());
+                }
+
+                void writeCurrent() {
+                        if (current == null) {
+                                return;
+                        }
+                        try {
+                                out.write(objectMapper.writeValueAsBytes(current));
+                                out.write('\n');
+                                out.flush();
+                        } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                        }
+                        current = null;
+                }
+        }
+}
@@ -1,14 +1,45 @@
 package com.idirtrack.vehicle_service.vehicle;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.idirtrack.vehicle_service.vehicle.https.VehicleResponse;
 
 public interface VehicleRepository extends JpaRepository<Vehicle, Long>{
 
     boolean existsByMatricule(String matricule);
 
+    // Find which of the matricules are already used, in one query
+    @Query("SELECT v.matricule FROM Vehicle v WHERE v.matricule IN :matricules")
+    List<String> findExistingMatricules(@Param("matricules") Collection<String> matricules);
+
     // Page<Vehicle> findAll(Pageable pageable);
-    
+
+    // Read only projection of the vehicles with their client, without loading the entities
+    // The total count is not queried, see CountCache
+    @Query("SELECT new com.idirtrack.vehicle_service.vehicle.https.VehicleResponse("
+            + "v.id, v.matricule, v.type, c.id, c.clientMicroserviceId, c.name, c.company) "
+            + "FROM Vehicle v LEFT JOIN v.client c")
+    Slice<VehicleResponse> findAllVehicleResponses(Pageable pageable);
+
+    // Keyset variant of the projection: vehicles seeked by id in descending order, without count query
+    @Query("SELECT new com.idirtrack.vehicle_service.vehicle.https.VehicleResponse("
+            + "v.id, v.matricule, v.type, c.id, c.clientMicroserviceId, c.name, c.company) "
+            + "FROM Vehicle v LEFT JOIN v.client c WHERE v.id < :after ORDER BY v.id DESC")
+    List<VehicleResponse> findVehicleResponsesAfter(@Param("after") Long after, Limit limit);
+
+    // Load the vehicle with its client and boitiers (device and sim included) in one query
+    @EntityGraph(attributePaths = { "client", "boitiers", "boitiers.device", "boitiers.sim" })
+    Optional<Vehicle> findWithBoitiersById(Long id);
     
 }
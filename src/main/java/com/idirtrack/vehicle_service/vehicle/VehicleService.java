@@ -1,17 +1,22 @@
 package com.idirtrack.vehicle_service.vehicle;
 
-import java.util.ArrayList;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.idirtrack.vehicle_service.basic.BasicException;
 import com.idirtrack.vehicle_service.basic.BasicResponse;
@@ -21,16 +26,24 @@ import com.idirtrack.vehicle_service.boitier.Boitier;
 import com.idirtrack.vehicle_service.boitier.BoitierRepository;
 import com.idirtrack.vehicle_service.boitier.BoitierService;
 import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierIdsResolution;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierOwnership;
+import com.idirtrack.vehicle_service.cache.CountCache;
 import com.idirtrack.vehicle_service.client.Client;
 import com.idirtrack.vehicle_service.client.ClientDTO;
-import com.idirtrack.vehicle_service.client.ClientRepository;
 import com.idirtrack.vehicle_service.client.ClientService;
 import com.idirtrack.vehicle_service.device.DeviceDTO;
 import com.idirtrack.vehicle_service.device.DeviceService;
+import com.idirtrack.vehicle_service.outbox.StockStatusOutbox;
 import com.idirtrack.vehicle_service.sim.SimDTO;
 import com.idirtrack.vehicle_service.sim.SimService;
+import com.idirtrack.vehicle_service.stock.StockItemType;
+import com.idirtrack.vehicle_service.subscription.Subscription;
 import com.idirtrack.vehicle_service.subscription.SubscriptionDTO;
+import com.idirtrack.vehicle_service.subscription.SubscriptionRepository;
 import com.idirtrack.vehicle_service.traccar.TracCarService;
+import com.idirtrack.vehicle_service.traccar.request.TracCarDeviceRequest;
+import com.idirtrack.vehicle_service.utils.CursorUtils;
 import com.idirtrack.vehicle_service.vehicle.https.VehicleRequest;
 import com.idirtrack.vehicle_service.vehicle.https.VehicleResponse;
 
@@ -43,11 +56,7 @@ import org.slf4j.LoggerFactory;
 public class VehicleService {
         @Autowired
         private VehicleRepository vehicleRepository;
-        @Autowired
-        private ClientRepository clientRepository;
 
-        @Autowired
-        private WebClient.Builder webClientBuilder;
 
         @Autowired
         private BoitierRepository boitierRepository;
@@ -67,6 +76,24 @@ public class VehicleService {
         @Autowired
         private SimService simService;
 
+        @Autowired
+        private SubscriptionRepository subscriptionRepository;
+
+        @Autowired
+        private CountCache countCache;
+
+        @Autowired
+        private StockStatusOutbox stockStatusOutbox;
+
+        @Autowired
+        private TransactionTemplate transactionTemplate;
+
+        @Value("${vehicle.remote-calls.deadline:15s}")
+        private Duration remoteCallsDeadline;
+
+        @Value("${pagination.keyset.max-size:1000}")
+        private int keysetMaxSize;
+
         private static final Logger logger = LoggerFactory.getLogger(VehicleService.class);
 
         public BasicResponse createNewVehicle(VehicleRequest request) throws BasicException {
@@ -80,107 +107,88 @@ public class VehicleService {
 
                 }
 
-                // Declare the client entity object
-                Client client = null;
-                // Verify if the client exists in the database, if not, check if it exists in
-                // the user microservice
-                if (!clientRepository.existsByClientMicroserviceId(request.getClientMicroserviceId())) {
-                        ClientDTO clientDTO = clientService
-                                        .getClientFormUserMicroservice(request.getClientMicroserviceId());
-                        client = clientService.saveClient(clientDTO);
-                }
-                // If exists, get the client from the database
-                else {
-                        client = clientRepository.findByClientMicroserviceId(request.getClientMicroserviceId());
+                // Get the client from the cache, the database or the user microservice
+                Client client = clientService.getOrCreateClient(request.getClientMicroserviceId());
+                if (client == null) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("Client not found")
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .build());
                 }
 
                 /*
                  * Check if the boitiers exist in the database and are not already attached to
-                 * another vehicle
+                 * another vehicle, the whole list is resolved in one query
                  *
                  * If one boitier not exist in the database, throw an exception
                  * If one boitier is already attached to another vehicle, throw an exception
                  */
-                List<Boitier> boitiers = new ArrayList<>();
-                for (Long boitierId : request.getBoitiersIds()) {
-
-                        // Check if the boitier exists in the database
-                        Boitier boitier = boitierRepository.findById(boitierId)
-                                        .orElseThrow(() -> new BasicException(BasicResponse.builder()
-                                                        .message("Boitier not found")
-                                                        .messageType(MessageType.ERROR)
-                                                        .status(HttpStatus.NOT_FOUND)
-                                                        .build()));
-                        // Check if the boitier is already attached to a vehicle
-                        if (boitier.getVehicle() != null) {
-                                String message = "Boitier with the phone " + boitier.getSim().getPhone()
-                                                + "and device IMEI "
-                                                + boitier.getDevice().getImei() + " already attached to a vehicle";
-                                throw new BasicException(BasicResponse.builder()
-                                                .message(message)
-                                                .messageType(MessageType.WARNING)
-                                                .status(HttpStatus.CONFLICT)
-                                                .build());
-                        }
-
-                        // Add the boitier to the list of boitiers
-                        boitiers.add(boitier);
+                BoitierIdsResolution resolution = boitierRepository.resolveIds(request.getBoitiersIds());
+                if (!resolution.getMissing().isEmpty()) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("Boitier not found")
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .build());
                 }
-
-                // Save the Boities in TracCar Microservice
-                for (Boitier boitier : boitiers) {
-                        boolean isSaved = tracCarService.createDevice(
-                                        client.getName(),
-                                        boitier.getDevice().getImei(),
-                                        client.getCompany(),
-                                        request.getMatricule());
-                        if (!isSaved) {
-                                throw new BasicException(BasicResponse.builder()
-                                                .message("Error while saving the boitier in TracCar Microservice")
-                                                .messageType(MessageType.WARNING)
-                                                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                                                .build());
-                        }
+                if (!resolution.getAttached().isEmpty()) {
+                        throw alreadyAttached(resolution.getAttached().get(0));
+                }
+                List<BoitierOwnership> boitiers = resolution.getFound();
+
+                // Save the Boities in TracCar Microservice, all the calls run concurrently
+                final Client vehicleClient = client;
+                Map<String, Boolean> tracCarDevices = tracCarService.createDevices(boitiers.stream()
+                                .map(boitier -> TracCarDeviceRequest.of(
+                                                vehicleClient.getName(),
+                                                boitier.getImei(),
+                                                vehicleClient.getCompany(),
+                                                request.getMatricule()))
+                                .collect(Collectors.toList()), remoteCallsDeadline);
+                if (tracCarDevices.containsValue(false)) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("Error while saving the boitier in TracCar Microservice")
+                                        .messageType(MessageType.WARNING)
+                                        .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                        .build());
                 }
 
-                // Attach Boitiers to the vehicle and save the vehicle in the database
-                Vehicle vehicle = Vehicle.builder()
-                                .matricule(request.getMatricule())
-                                .client(clientRepository.findByClientMicroserviceId(request.getClientMicroserviceId()))
-                                .type(request.getType())
-                                .boitiers(boitiers)
-                                .build();
+                // Save the vehicle, attach its boitiers and record the status changes in one
+                // transaction
+                Boolean created = transactionTemplate.execute(status -> {
+                        // Save the vehicle in the database
+                        Vehicle vehicle = vehicleRepository.save(Vehicle.builder()
+                                        .matricule(request.getMatricule())
+                                        .client(vehicleClient)
+                                        .type(request.getType())
+                                        .build());
 
-                vehicle = vehicleRepository.save(vehicle);
+                        // Attach vehicle to boitiers in one statement, only the boitiers still free are
+                        // attached, so a boitier taken by a concurrent request rolls the vehicle back
+                        if (boitierRepository.attachToVehicle(vehicle, resolution.getFoundIds()) != boitiers.size()) {
+                                status.setRollbackOnly();
+                                return false;
+                        }
 
-                // Attach vehicle to boitiers
-                for (Boitier boitier : boitiers) {
-                        boitier.setVehicle(vehicle);
-                        boitierRepository.save(boitier);
+                        // Chnage the status of the boitiers to installed in the stock microservice
+                        stockStatusOutbox.statusesChanged(StockItemType.DEVICE, boitiers.stream()
+                                        .map(BoitierOwnership::getDeviceMicroserviceId).toList(), "installed");
+                        stockStatusOutbox.statusesChanged(StockItemType.SIM, boitiers.stream()
+                                        .map(BoitierOwnership::getSimMicroserviceId).toList(), "installed");
+                        return true;
+                });
+                if (!Boolean.TRUE.equals(created)) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("A boitier was attached to another vehicle in the meantime")
+                                        .messageType(MessageType.WARNING)
+                                        .status(HttpStatus.CONFLICT)
+                                        .build());
                 }
 
-                // Chnage the status of the boitiers in the stock microservice
-
-                for (Boitier boitier : boitiers) {
-                        boolean isDeviceStatusChnaged = deviceService
-                                        .changeDeviceStatus(boitier.getDevice().getDeviceMicroserviceId(),"installed");
-                        if (!isDeviceStatusChnaged) {
-                                throw new BasicException(BasicResponse.builder()
-                                                .message("Error while changing the status of the device in the stock microservice")
-                                                .messageType(MessageType.WARNING)
-                                                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                                                .build());
-                        }
-                        boolean isSimStatusChanged = simService.changeSimStatus(boitier.getSim().getSimMicroserviceId(),"installed");
-
-                        if (!isSimStatusChanged) {
-                                throw new BasicException(BasicResponse.builder()
-                                                .message("Error while changing the status of the sim in the stock microservice")
-                                                .messageType(MessageType.WARNING)
-                                                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                                                .build());
-                        }
-                }
+                // The vehicles count changed and the boitiers are no longer unassigned
+                countCache.invalidate(CountCache.VEHICLES);
+                countCache.invalidate(CountCache.BOITIERS);
 
                 return BasicResponse.builder()
                                 .message("Vehicle created successfully")
@@ -194,28 +202,32 @@ public class VehicleService {
          * 
          * This method performs the following steps:
          * 1. Creates a pagination request using the provided page number and page size.
-         * 2. Fetches a page of vehicles from the repository.
+         * 2. Fetches a slice of vehicles from the repository, projected directly into
+         * {@link VehicleResponse} without loading the vehicle and client entities.
          * 3. Throws a {@link BasicException} if no vehicles are found for the specified
          * page.
-         * 4. Transforms the vehicles into DTOs for the response.
+         * 4. If requested, gets the total count of vehicles from the {@link CountCache}
+         * to compute the total pages, the COUNT query only runs when the cached value
+         * expired or was invalidated.
          * 5. Constructs metadata for pagination, including current page, total pages,
-         * and page size.
+         * page size and if there is a next page.
          * 6. Builds and returns a {@link BasicResponse} object containing the vehicle
          * list, metadata, and status.
          * 
-         * @param page the page number (1-based index) to retrieve
-         * @param size the number of vehicles per page
+         * @param page      the page number (1-based index) to retrieve
+         * @param size      the number of vehicles per page
+         * @param withTotal whether to return the total pages in the metadata
          * @return a {@link BasicResponse} with the list of vehicles, pagination
          *         metadata, and status
          * @throws BasicException if no vehicles are found for the specified page
          */
-        public BasicResponse getAllVehicles(int page, int size) throws BasicException {
+        public BasicResponse getAllVehicles(int page, int size, boolean withTotal) throws BasicException {
 
                 // Create a pagination request
                 Pageable pageable = PageRequest.of(page - 1, size,Sort.by(Sort.Direction.DESC, "id"));
 
-                // Get Page of vehicles
-                Page<Vehicle> vehicles = vehicleRepository.findAll(pageable);
+                // Get Slice of vehicles projected directly into the response DTO
+                Slice<VehicleResponse> vehicles = vehicleRepository.findAllVehicleResponses(pageable);
 
                 // Throw exception if the vehicles list is empty
                 if (vehicles.getContent().isEmpty()) {
@@ -226,28 +238,18 @@ public class VehicleService {
                                         .build());
                 }
 
-                // Build the DTO of vehicle resppnse
-                List<VehicleResponse> vehiclesResponse = vehicles.getContent().stream()
-                                .map(vehicle -> {
-                                        ClientDTO clientDTO = ClientDTO.builder()
-                                                        .id(vehicle.getClient().getId())
-                                                        .name(vehicle.getClient().getName())
-                                                        .company(vehicle.getClient().getCompany())
-                                                        .clientMicroserviceId(vehicle.getClient().getClientMicroserviceId())
-                                                        .build();
-                                        return VehicleResponse.builder()
-                                                        .vehicle(vehicle.toDTO())
-                                                        .client(clientDTO)
-                                                        .build();
-                                })
-                                .collect(Collectors.toList());
+                List<VehicleResponse> vehiclesResponse = vehicles.getContent();
 
                 // Build the metadata object
                 MetaData metaData = MetaData.builder()
                                 .currentPage(vehicles.getNumber() + 1)
-                                .totalPages(vehicles.getTotalPages())
                                 .size(vehicles.getSize())
+                                .hasNext(vehicles.hasNext())
                                 .build();
+                if (withTotal) {
+                        long total = countCache.get(CountCache.VEHICLES, "all", vehicleRepository::count);
+                        metaData.setTotalPages(new PageImpl<>(vehiclesResponse, pageable, total).getTotalPages());
+                }
 
                 // Build the response object
                 return BasicResponse.builder()
@@ -257,26 +259,112 @@ public class VehicleService {
                                 .build();
         }
 
-        // Service: Get the vehicle by id and her boitiers
+        /**
+         * Retrieves a slice of vehicles in keyset mode.
+         * 
+         * Instead of an offset, this method seeks on the vehicle id (descending, like
+         * the page mode) after the given cursor, and does not run a count query. One
+         * extra row is fetched to know if there is a next slice, whose cursor is
+         * returned in the metadata.
+         * 
+         * @param after the cursor returned by the previous slice, empty for the first
+         *              slice
+         * @param size  the number of vehicles per slice
+         * @return a {@link BasicResponse} with the list of vehicles and the next cursor
+         * @throws BasicException if the cursor or the size is invalid or no vehicles
+         *                        are found
+         */
+        public BasicResponse getAllVehiclesAfter(String after, int size) throws BasicException {
+                // Check the size, then decode the cursor, start from the newest vehicle if empty
+                CursorUtils.checkSize(size, keysetMaxSize);
+                Long afterId = CursorUtils.decode(after);
+
+                // Get the slice of vehicles projected directly into the response DTO
+                List<VehicleResponse> vehiclesResponse = vehicleRepository.findVehicleResponsesAfter(
+                                afterId == null ? Long.MAX_VALUE : afterId, Limit.of(size + 1));
+
+                // Throw exception if the vehicles list is empty
+                if (vehiclesResponse.isEmpty()) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("No vehicles found")
+                                        .messageType(MessageType.INFO)
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .build());
+                }
+
+                // Drop the extra row and build the next cursor from the last vehicle
+                String nextCursor = null;
+                if (vehiclesResponse.size() > size) {
+                        vehiclesResponse = vehiclesResponse.subList(0, size);
+                        nextCursor = CursorUtils.encode(vehiclesResponse.get(size - 1).getVehicle().getId());
+                }
+
+                // Build the metadata object
+                MetaData metaData = MetaData.builder()
+                                .size(size)
+                                .nextCursor(nextCursor)
+                                .build();
+
+                // Build the response object
+                return BasicResponse.builder()
+                                .content(vehiclesResponse)
+                                .metadata(metaData)
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
+        // Service: Attach the boitiers to the vehicle and get them, the boitiers are
+        // resolved and attached with one query each
         public List<Boitier> attachBoitierToVehicle(Vehicle vehicle, List<Long> boitierIds) throws BasicException {
-                // Boucle in boitiers for get the boitier and attach to vehicle
-                List<Boitier> boitiersList = new ArrayList<>();
-                for (Long boitierId : boitierIds) {
-                        Boitier boitier = boitierRepository.findById(boitierId)
-                                        .orElseThrow(() -> new BasicException(BasicResponse.builder()
-                                                        .message("Boitier not found")
-                                                        .messageType(MessageType.ERROR)
-                                                        .status(HttpStatus.NOT_FOUND)
-                                                        .build()));
-                        boitier.setVehicle(vehicle);
-                        boitier = boitierRepository.save(boitier);
-                        boitiersList.add(boitier);
+                BoitierIdsResolution resolution = boitierRepository.resolveIds(boitierIds);
+                if (!resolution.getMissing().isEmpty()) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("Boitier not found")
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .build());
+                }
+                // The boitiers already attached to this vehicle are kept
+                List<BoitierOwnership> others = resolution.getAttached().stream()
+                                .filter(boitier -> !boitier.getVehicleId().equals(vehicle.getId()))
+                                .toList();
+                if (!others.isEmpty()) {
+                        throw alreadyAttached(others.get(0));
+                }
+
+                // Attach the free boitiers, none of them may be taken meanwhile by another vehicle
+                int free = resolution.getFound().size() - resolution.getAttached().size();
+                Boolean attached = transactionTemplate.execute(status -> {
+                        if (boitierRepository.attachToVehicle(vehicle, resolution.getFoundIds()) != free) {
+                                status.setRollbackOnly();
+                                return false;
+                        }
+                        return true;
+                });
+                if (!Boolean.TRUE.equals(attached)) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("A boitier was attached to another vehicle in the meantime")
+                                        .messageType(MessageType.WARNING)
+                                        .status(HttpStatus.CONFLICT)
+                                        .build());
                 }
+
+                List<Boitier> boitiersList = boitierRepository.findAllByIdIn(resolution.getFoundIds());
                 vehicle.setBoitiers(boitiersList);
 
                 return boitiersList;
         }
 
+        // The conflict of a boitier already attached to a vehicle
+        private BasicException alreadyAttached(BoitierOwnership boitier) {
+                return new BasicException(BasicResponse.builder()
+                                .message("Boitier with the phone " + boitier.getPhone() + " and device IMEI "
+                                                + boitier.getImei() + " already attached to a vehicle")
+                                .messageType(MessageType.WARNING)
+                                .status(HttpStatus.CONFLICT)
+                                .build());
+        }
+
  
         /**
          * Retrieves detailed information about a specific vehicle by its ID.
@@ -326,8 +414,8 @@ public class VehicleService {
          * 
          * This service retrieves the boitiers of a vehicle by its ID. It performs the
          * following steps:
-         * 1. Finds the vehicle by ID.
-         * 2. Retrieves the boitiers of the vehicle
+         * 1. Finds the vehicle by ID with its boitiers, devices and sims in one query.
+         * 2. Loads the latest subscription of every boitier in a second query
          * 3. Transforms the boitiers into DTOs
          * 4. Builds and returns a {@link BasicResponse} object containing the list of
          * boitiers and status.
@@ -335,8 +423,8 @@ public class VehicleService {
          * @param vehicleId the ID of the vehicle to retrieve
          */
         public BasicResponse getVehicleBoities(Long vehicleId) throws BasicException {
-                // Find the vehicle by id
-                Vehicle vehicle = vehicleRepository.findById(vehicleId)
+                // Find the vehicle by id with her boitiers
+                Vehicle vehicle = vehicleRepository.findWithBoitiersById(vehicleId)
                                 .orElseThrow(() -> new BasicException(BasicResponse.builder()
                                                 .message("Vehicle not found")
                                                 .messageType(MessageType.ERROR)
@@ -346,6 +434,15 @@ public class VehicleService {
                 // Get the boitiers of the vehicle
                 List<Boitier> boitiers = vehicle.getBoitiers();
 
+                // Get the last subscription of each boitier, indexed by boitier id
+                Map<Long, Subscription> lastSubscriptions = new HashMap<>();
+                if (!boitiers.isEmpty()) {
+                        List<Long> boitiersIds = boitiers.stream().map(Boitier::getId).collect(Collectors.toList());
+                        for (Subscription subscription : subscriptionRepository.findLatestByBoitierIds(boitiersIds)) {
+                                lastSubscriptions.put(subscription.getBoitier().getId(), subscription);
+                        }
+                }
+
                 // Transform the boitiers into DTOs
                 List<BoitierDTO> boitiersDTO = boitiers.stream()
                                 .map(boitier -> {
@@ -366,11 +463,13 @@ public class VehicleService {
                                                         .build();
                                         
                                         // Get the last subscription of the boitier
-                                        SubscriptionDTO subscriptionDTO = SubscriptionDTO.builder()
-                                                        .id(boitier.getSubscriptions().get(boitier.getSubscriptions().size() - 1).getId())
-                                                        .startDate(boitier.getSubscriptions().get(boitier.getSubscriptions().size() - 1).getStartDate())
-                                                        .endDate(boitier.getSubscriptions().get(boitier.getSubscriptions().size() - 1).getEndDate())
-                                                        .build();
+                                        Subscription lastSubscription = lastSubscriptions.get(boitier.getId());
+                                        SubscriptionDTO subscriptionDTO = lastSubscription == null ? null
+                                                        : SubscriptionDTO.builder()
+                                                                        .id(lastSubscription.getId())
+                                                                        .startDate(lastSubscription.getStartDate())
+                                                                        .endDate(lastSubscription.getEndDate())
+                                                                        .build();
 
                                         // Build the boitier DTO
                                         return BoitierDTO.builder()
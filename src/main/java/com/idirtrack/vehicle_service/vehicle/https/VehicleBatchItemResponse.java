@@ -0,0 +1,24 @@
+package com.idirtrack.vehicle_service.vehicle.https;
+
+import org.springframework.http.HttpStatus;
+
+import com.idirtrack.vehicle_service.basic.MessageType;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class VehicleBatchItemResponse {
+    // Position of the vehicle in the batch request
+    private Integer index;
+    private String matricule;
+    private Long vehicleId;
+    private HttpStatus status;
+    private MessageType messageType;
+    private String message;
+}
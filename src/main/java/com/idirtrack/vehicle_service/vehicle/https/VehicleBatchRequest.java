@@ -0,0 +1,20 @@
+package com.idirtrack.vehicle_service.vehicle.https;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class VehicleBatchRequest {
+    @NotEmpty(message = "Vehicles are required")
+    @Valid
+    private List<VehicleRequest> vehicles;
+}
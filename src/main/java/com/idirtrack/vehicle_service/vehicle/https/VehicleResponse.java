@@ -21,4 +21,20 @@ public class VehicleResponse {
     private VehicleDTO vehicle;
     private ClientDTO client;
     private List<BoitierDTO> boitiersList;
+
+    // Used by the JPQL projection of the vehicles list
+    public VehicleResponse(Long vehicleId, String matricule, String type,
+            Long clientId, Long clientMicroserviceId, String clientName, String clientCompany) {
+        this.vehicle = VehicleDTO.builder()
+                .id(vehicleId)
+                .matricule(matricule)
+                .type(type)
+                .build();
+        this.client = ClientDTO.builder()
+                .id(clientId)
+                .clientMicroserviceId(clientMicroserviceId)
+                .name(clientName)
+                .company(clientCompany)
+                .build();
+    }
 }
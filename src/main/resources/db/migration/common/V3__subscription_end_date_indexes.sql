@@ -0,0 +1,5 @@
+-- The latest subscription of a boitier is read from the end of the
+-- (boitier_id, end_date) index, the expiring subscriptions from a range of the
+-- end_date index
+CREATE INDEX idx_subscriptions_boitier_end_date ON subscriptions (boitier_id, end_date);
+CREATE INDEX idx_subscriptions_end_date ON subscriptions (end_date);
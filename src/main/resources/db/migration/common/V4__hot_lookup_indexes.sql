@@ -0,0 +1,10 @@
+-- Unique keys of the lookups by matricule and by the ids of the other
+-- microservices, they were full-table scans. The existing duplicates must be
+-- removed before this migration.
+ALTER TABLE vehicles ADD CONSTRAINT uk_vehicles_matricule UNIQUE (matricule);
+ALTER TABLE clients ADD CONSTRAINT uk_clients_client_microservice_id UNIQUE (client_microservice_id);
+ALTER TABLE devices ADD CONSTRAINT uk_devices_device_microservice_id UNIQUE (device_microservice_id);
+ALTER TABLE sims ADD CONSTRAINT uk_sims_sim_microservice_id UNIQUE (sim_microservice_id);
+
+-- The boitiers of a vehicle, and the boitiers not attached to a vehicle
+CREATE INDEX idx_boitiers_vehicle_id ON boitiers (vehicle_id);
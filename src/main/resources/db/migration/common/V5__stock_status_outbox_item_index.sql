@@ -0,0 +1,3 @@
+-- The pending events of an item, read by the dispatcher to hold back the items
+-- waiting for their next attempt
+CREATE INDEX idx_stock_status_outbox_item ON stock_status_outbox (item_type, item_microservice_id, status, id);
@@ -0,0 +1,19 @@
+-- Same table as the MySQL migration, with the H2 types.
+
+CREATE TABLE stock_status_outbox (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    item_type ENUM('DEVICE', 'SIM') NOT NULL,
+    item_microservice_id BIGINT NOT NULL,
+    item_status VARCHAR(32) NOT NULL,
+    idempotency_key VARCHAR(36) NOT NULL,
+    status ENUM('DISPATCHED', 'FAILED', 'PENDING') NOT NULL,
+    attempts INTEGER NOT NULL,
+    created_at TIMESTAMP(6) WITH TIME ZONE,
+    next_attempt_at TIMESTAMP(6) WITH TIME ZONE,
+    dispatched_at TIMESTAMP(6) WITH TIME ZONE,
+    last_error VARCHAR(512),
+    PRIMARY KEY (id)
+);
+
+ALTER TABLE stock_status_outbox ADD CONSTRAINT UKjmvm8yviwf373tinyhlyy2cbm UNIQUE (idempotency_key);
+CREATE INDEX idx_stock_status_outbox_status ON stock_status_outbox (status, id);
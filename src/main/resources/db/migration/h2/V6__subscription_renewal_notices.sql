@@ -0,0 +1,21 @@
+-- Same tables as the MySQL migration, with the H2 types.
+
+CREATE TABLE subscription_renewal_notices (
+    subscription_id BIGINT NOT NULL,
+    boitier_id BIGINT,
+    vehicle_id BIGINT,
+    client_microservice_id BIGINT,
+    end_date DATE,
+    created_at TIMESTAMP(6) WITH TIME ZONE,
+    sent_at TIMESTAMP(6) WITH TIME ZONE,
+    PRIMARY KEY (subscription_id)
+);
+
+CREATE TABLE scheduled_task_leases (
+    name VARCHAR(64) NOT NULL,
+    locked_until TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    locked_by VARCHAR(255),
+    PRIMARY KEY (name)
+);
+
+INSERT INTO scheduled_task_leases (name, locked_until) VALUES ('subscription-expiry-scan', TIMESTAMP WITH TIME ZONE '1970-01-01 00:00:00+00');
@@ -0,0 +1,60 @@
+-- Schema of the service before the versioned migrations, as created by
+-- Hibernate. A database created by Hibernate is baselined at this version.
+
+CREATE TABLE clients (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    client_microservice_id BIGINT,
+    company VARCHAR(255),
+    name VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+CREATE TABLE vehicles (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    client_id BIGINT,
+    matricule VARCHAR(255),
+    type VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+CREATE TABLE devices (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    device_microservice_id BIGINT,
+    imei VARCHAR(255),
+    type VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+CREATE TABLE sims (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    sim_microservice_id BIGINT,
+    ccid VARCHAR(255),
+    operator_name VARCHAR(255),
+    phone VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+CREATE TABLE boitiers (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    device_id BIGINT,
+    sim_id BIGINT,
+    vehicle_id BIGINT,
+    PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+CREATE TABLE subscriptions (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    start_date DATE,
+    end_date DATE,
+    boitier_id BIGINT,
+    PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+ALTER TABLE boitiers ADD CONSTRAINT UKrhgo3nhr6b5sp5opwc7jprd7b UNIQUE (device_id);
+ALTER TABLE boitiers ADD CONSTRAINT UKg92dwaxwkbrh9nko8c6jwjwl2 UNIQUE (sim_id);
+
+ALTER TABLE vehicles ADD CONSTRAINT FKoxy6oykc3j2b4qag4x9pfkmcg FOREIGN KEY (client_id) REFERENCES clients (id);
+ALTER TABLE boitiers ADD CONSTRAINT FKgfx6w18jge7cgsr8y31rr1y6i FOREIGN KEY (device_id) REFERENCES devices (id);
+ALTER TABLE boitiers ADD CONSTRAINT FK9bx8uxpowxxriep7m05piujj4 FOREIGN KEY (sim_id) REFERENCES sims (id);
+ALTER TABLE boitiers ADD CONSTRAINT FKgdae6buwba6rjwbhyywc5ktai FOREIGN KEY (vehicle_id) REFERENCES vehicles (id);
+ALTER TABLE subscriptions ADD CONSTRAINT FK1ftvkshucttt72eh4vf2o2rw0 FOREIGN KEY (boitier_id) REFERENCES boitiers (id);
@@ -0,0 +1,20 @@
+-- Outbox of the stock status changes, sent to the stock microservice by the
+-- dispatcher.
+
+CREATE TABLE stock_status_outbox (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    item_type ENUM('DEVICE', 'SIM') NOT NULL,
+    item_microservice_id BIGINT NOT NULL,
+    item_status VARCHAR(32) NOT NULL,
+    idempotency_key VARCHAR(36) NOT NULL,
+    status ENUM('DISPATCHED', 'FAILED', 'PENDING') NOT NULL,
+    attempts INTEGER NOT NULL,
+    created_at DATETIME(6),
+    next_attempt_at DATETIME(6),
+    dispatched_at DATETIME(6),
+    last_error VARCHAR(512),
+    PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+ALTER TABLE stock_status_outbox ADD CONSTRAINT UKjmvm8yviwf373tinyhlyy2cbm UNIQUE (idempotency_key);
+CREATE INDEX idx_stock_status_outbox_status ON stock_status_outbox (status, id);
@@ -0,0 +1,22 @@
+-- Outbox of the subscription renewal notices, written by the expiry scan, and
+-- the lease electing the instance running a scheduled task.
+
+CREATE TABLE subscription_renewal_notices (
+    subscription_id BIGINT NOT NULL,
+    boitier_id BIGINT,
+    vehicle_id BIGINT,
+    client_microservice_id BIGINT,
+    end_date DATE,
+    created_at DATETIME(6),
+    sent_at DATETIME(6),
+    PRIMARY KEY (subscription_id)
+) ENGINE=InnoDB;
+
+CREATE TABLE scheduled_task_leases (
+    name VARCHAR(64) NOT NULL,
+    locked_until DATETIME(6) NOT NULL,
+    locked_by VARCHAR(255),
+    PRIMARY KEY (name)
+) ENGINE=InnoDB;
+
+INSERT INTO scheduled_task_leases (name, locked_until) VALUES ('subscription-expiry-scan', '1970-01-01 00:00:00');
@@ -0,0 +1,112 @@
+package com.idirtrack.vehicle_service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.cloud.config.enabled=false"
+})
+class SchemaMigrationTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testMigrations_CreateTheSchemaValidatedByHibernate() {
+        assertEquals(List.of("1", "2", "3", "4", "5", "6"), jdbcTemplate.queryForList(
+                "SELECT \"version\" FROM \"flyway_schema_history\" WHERE \"success\" AND \"version\" IS NOT NULL "
+                        + "ORDER BY \"installed_rank\"",
+                String.class));
+    }
+
+    @Test
+    void testMigrations_UpgradeTheSchemaCreatedByHibernate() {
+        // The schema created by Hibernate before the migrations, with its data
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pre-migrations;DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/h2/V1__baseline.sql")).execute(dataSource);
+        JdbcTemplate preMigrations = new JdbcTemplate(dataSource);
+        preMigrations.update("INSERT INTO vehicles (id, matricule) VALUES (1, 'A-1')");
+        preMigrations.update("INSERT INTO boitiers (id, vehicle_id) VALUES (1, 1)");
+
+        // Configured like the service
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration/h2", "classpath:db/migration/common")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load()
+                .migrate();
+
+        // The baseline is recorded, not run, and the later migrations run on the existing data
+        assertEquals(List.of("BASELINE", "SQL", "SQL", "SQL", "SQL", "SQL"), preMigrations.queryForList(
+                "SELECT \"type\" FROM \"flyway_schema_history\" WHERE \"success\" AND \"version\" IS NOT NULL "
+                        + "ORDER BY \"installed_rank\"",
+                String.class));
+        assertEquals(0, preMigrations.queryForObject("SELECT COUNT(*) FROM stock_status_outbox", Integer.class));
+        assertEquals(1, preMigrations.queryForObject("SELECT COUNT(*) FROM scheduled_task_leases", Integer.class));
+        assertEquals(List.of("IDX_SUBSCRIPTIONS_BOITIER_END_DATE", "IDX_SUBSCRIPTIONS_END_DATE"),
+                preMigrations.queryForList("SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES "
+                        + "WHERE TABLE_NAME = 'SUBSCRIPTIONS' AND INDEX_NAME LIKE 'IDX_%' ORDER BY INDEX_NAME",
+                        String.class));
+        assertEquals(1, preMigrations.queryForObject("SELECT vehicle_id FROM boitiers WHERE id = 1", Integer.class));
+    }
+
+    @Test
+    void testHotLookups_UseAnIndex() {
+        assertUsesIndex("SELECT id FROM vehicles WHERE matricule = 'A-1'", "UK_VEHICLES_MATRICULE");
+        assertUsesIndex("SELECT id FROM clients WHERE client_microservice_id = 1",
+                "UK_CLIENTS_CLIENT_MICROSERVICE_ID");
+        assertUsesIndex("SELECT device_microservice_id FROM devices WHERE device_microservice_id IN (1, 2)",
+                "UK_DEVICES_DEVICE_MICROSERVICE_ID");
+        assertUsesIndex("SELECT sim_microservice_id FROM sims WHERE sim_microservice_id IN (1, 2)",
+                "UK_SIMS_SIM_MICROSERVICE_ID");
+        // H2, like InnoDB, also indexes the foreign key of the vehicle, either index is used
+        assertUsesIndex("SELECT id FROM boitiers WHERE vehicle_id = 1", "IDX_BOITIERS_VEHICLE_ID",
+                "FKGDAE6BUWBA6RJWBHYYWC5KTAI");
+        assertUsesIndex("SELECT id FROM boitiers WHERE vehicle_id IS NULL", "IDX_BOITIERS_VEHICLE_ID",
+                "FKGDAE6BUWBA6RJWBHYYWC5KTAI");
+        assertUsesIndex("SELECT id FROM subscriptions WHERE boitier_id = 1 ORDER BY end_date DESC, id DESC LIMIT 1",
+                "IDX_SUBSCRIPTIONS_BOITIER_END_DATE");
+        assertUsesIndex("SELECT id FROM subscriptions WHERE end_date BETWEEN DATE '2025-01-01' AND DATE '2025-02-01'",
+                "IDX_SUBSCRIPTIONS_END_DATE");
+    }
+
+    @Test
+    void testUniqueConstraints_RejectDuplicates() {
+        jdbcTemplate.update("INSERT INTO vehicles (matricule) VALUES ('A-1')");
+        jdbcTemplate.update("INSERT INTO devices (device_microservice_id) VALUES (1)");
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> jdbcTemplate.update("INSERT INTO vehicles (matricule) VALUES ('A-1')"));
+        assertThrows(DataIntegrityViolationException.class,
+                () -> jdbcTemplate.update("INSERT INTO devices (device_microservice_id) VALUES (1)"));
+        // The boitiers not yet provisioned from the stock have no id
+        jdbcTemplate.update("INSERT INTO sims (sim_microservice_id) VALUES (NULL)");
+        jdbcTemplate.update("INSERT INTO sims (sim_microservice_id) VALUES (NULL)");
+    }
+
+    // The plan of H2 names the index it reads, or scans the table
+    private void assertUsesIndex(String query, String... indexes) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + query, String.class).toUpperCase();
+        assertTrue(Arrays.stream(indexes).anyMatch(plan::contains), plan);
+        assertFalse(plan.contains("TABLESCAN"), plan);
+    }
+}
@@ -0,0 +1,288 @@
+package com.idirtrack.vehicle_service.boitier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
+import com.idirtrack.vehicle_service.boitier.https.BoitierCsvParser;
+import com.idirtrack.vehicle_service.boitier.https.BoitierImportItemResponse;
+import com.idirtrack.vehicle_service.boitier.https.BoitierRequest;
+import com.idirtrack.vehicle_service.cache.CountCache;
+import com.idirtrack.vehicle_service.device.Device;
+import com.idirtrack.vehicle_service.device.DeviceDTO;
+import com.idirtrack.vehicle_service.device.DeviceRepository;
+import com.idirtrack.vehicle_service.device.DeviceService;
+import com.idirtrack.vehicle_service.outbox.OutboxStatus;
+import com.idirtrack.vehicle_service.outbox.StockStatusEvent;
+import com.idirtrack.vehicle_service.outbox.StockStatusEventRepository;
+import com.idirtrack.vehicle_service.outbox.StockStatusOutbox;
+import com.idirtrack.vehicle_service.sim.SimDTO;
+import com.idirtrack.vehicle_service.sim.SimRepository;
+import com.idirtrack.vehicle_service.sim.SimService;
+import com.idirtrack.vehicle_service.subscription.SubscriptionRepository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.cloud.config.enabled=false",
+        "boitier.batch.insert-size=500"
+})
+@Import({ BoitierBatchService.class, BoitierBatchWriter.class, StockStatusOutbox.class, CountCache.class })
+class BoitierBatchServiceTest {
+
+    private static final Date START = Date.valueOf("2099-01-01");
+    private static final Date END = Date.valueOf("2100-01-01");
+
+    @Autowired
+    private BoitierBatchService boitierBatchService;
+
+    @Autowired
+    private BoitierRepository boitierRepository;
+    @Autowired
+    private DeviceRepository deviceRepository;
+    @Autowired
+    private SimRepository simRepository;
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+    @Autowired
+    private StockStatusEventRepository stockStatusEventRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @SpyBean
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private DeviceService deviceService;
+    @MockBean
+    private SimService simService;
+
+    @BeforeEach
+    void setUp() {
+        when(deviceService.getDeviceByIdFromMicroserviceAsync(anyLong())).thenAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(DeviceDTO.builder()
+                    .deviceMicroserviceId(id).imei("imei-" + id).type("FMB920").build());
+        });
+        when(simService.getSimByIdFromMicroserviceAsync(anyLong())).thenAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(SimDTO.builder()
+                    .simMicroserviceId(id).phone("06" + id).ccid("ccid-" + id).operatorName("IAM").build());
+        });
+    }
+
+    @Test
+    void testCreateBoitiersBatch_InsertsAThousandBoitiersInAFewBatches() throws Exception {
+        List<BoitierRequest> requests = new ArrayList<>();
+        for (long i = 1; i <= 1000; i++) {
+            requests.add(new BoitierRequest(i, 10_000 + i, START, END));
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        BasicResponse response = boitierBatchService.createBoitiersBatch(requests);
+
+        assertEquals(HttpStatus.CREATED, response.getStatus());
+        List<BoitierDTO> boitiers = (List<BoitierDTO>) response.getContent();
+        assertEquals(1000, boitiers.size());
+        boitiers.forEach(boitier -> {
+            assertNotNull(boitier.getId());
+            assertNotNull(boitier.getSubscription().getId());
+        });
+
+        // One JDBC batch per table and per 500 boitiers
+        verify(jdbcTemplate, times(8)).batchUpdate(any(PreparedStatementCreator.class),
+                any(BatchPreparedStatementSetter.class), any(KeyHolder.class));
+        // Two validation queries, and one multi-row insert per item type and per 500 events
+        assertEquals(2 + 4, statistics.getPrepareStatementCount());
+
+        // The rows are linked like the ones saved with JPA
+        entityManager.clear();
+        assertEquals(1000, boitierRepository.count());
+        assertEquals(1000, subscriptionRepository.count());
+        Boitier last = boitierRepository.findById(boitiers.get(999).getId()).orElseThrow();
+        assertEquals(1000L, last.getDevice().getDeviceMicroserviceId());
+        assertEquals("imei-1000", last.getDevice().getImei());
+        assertEquals(11_000L, last.getSim().getSimMicroserviceId());
+        assertEquals(END, subscriptionRepository.findAllByBoitierId(last.getId()).get(0).getEndDate());
+
+        // The pending statuses are recorded for the stock microservice
+        List<StockStatusEvent> events = stockStatusEventRepository.findAll();
+        assertEquals(2000, events.size());
+        events.forEach(event -> {
+            assertEquals(OutboxStatus.PENDING, event.getStatus());
+            assertEquals("pending", event.getItemStatus());
+            assertNotNull(event.getNextAttemptAt());
+        });
+    }
+
+    @Test
+    void testCreateBoitiersBatch_RejectsTheWholeBatchWithTheErrorsOfEachBoitier() {
+        deviceRepository.save(Device.builder().deviceMicroserviceId(1L).imei("used").build());
+        List<BoitierRequest> requests = List.of(
+                new BoitierRequest(1L, 101L, START, END),
+                new BoitierRequest(2L, 102L, END, START),
+                new BoitierRequest(3L, 102L, START, END));
+
+        BasicException exception = assertThrows(BasicException.class,
+                () -> boitierBatchService.createBoitiersBatch(requests));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getResponse().getStatus());
+        assertEquals(List.of("boitiers[0].device", "boitiers[1].startDate", "boitiers[2].sim"),
+                exception.getResponse().getErrorsList().stream().map(error -> error.getKey()).toList());
+        verify(deviceService, never()).getDeviceByIdFromMicroserviceAsync(anyLong());
+        assertEquals(0, boitierRepository.count());
+    }
+
+    @Test
+    void testCreateBoitiersBatch_UnknownStockItemRejectsTheBatch() {
+        when(simService.getSimByIdFromMicroserviceAsync(102L)).thenReturn(CompletableFuture.failedFuture(
+                new BasicException(BasicResponse.builder().status(HttpStatus.NOT_FOUND).message("Sim not found").build())));
+
+        BasicException exception = assertThrows(BasicException.class,
+                () -> boitierBatchService.createBoitiersBatch(List.of(
+                        new BoitierRequest(1L, 101L, START, END),
+                        new BoitierRequest(2L, 102L, START, END))));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getResponse().getStatus());
+        assertEquals("boitiers[1].sim", exception.getResponse().getErrorsList().get(0).getKey());
+        assertEquals("Sim not found", exception.getResponse().getErrorsList().get(0).getMessage());
+        assertEquals(0, boitierRepository.count());
+        assertEquals(0, simRepository.count());
+    }
+
+    @Test
+    void testImportBoitiers_CreatesTheValidBoitiersAndReportsEachOne() throws Exception {
+        when(deviceService.getDeviceByIdFromMicroserviceAsync(4L)).thenReturn(CompletableFuture.failedFuture(
+                new BasicException(BasicResponse.builder().status(HttpStatus.NOT_FOUND).message("Device not found").build())));
+        List<BoitierRequest> requests = BoitierCsvParser.parse(String.join("\n",
+                "simMicroserviceId,deviceMicroserviceId,startDate,endDate",
+                "101,1,2099-01-01,2100-01-01",
+                "102,2,,2100-01-01",
+                "101,3,2099-01-01,2100-01-01",
+                "104,4,2099-01-01,2100-01-01",
+                "105,5,2099-01-01,2100-01-01"));
+
+        BasicResponse response = boitierBatchService.importBoitiers(requests);
+
+        List<BoitierImportItemResponse> results = (List<BoitierImportItemResponse>) response.getContent();
+        assertEquals(List.of(HttpStatus.CREATED, HttpStatus.BAD_REQUEST, HttpStatus.BAD_REQUEST,
+                HttpStatus.BAD_REQUEST, HttpStatus.CREATED), results.stream().map(BoitierImportItemResponse::getStatus).toList());
+        assertEquals("Start date is required", results.get(1).getMessage());
+        assertEquals("Sim already used in another boitier", results.get(2).getMessage());
+        assertEquals("Device not found", results.get(3).getMessage());
+        assertEquals("2 of 5 boitiers imported", response.getMessage());
+
+        // Only the valid boitiers are created, and their stock is the only one fetched
+        assertEquals(2, boitierRepository.count());
+        assertEquals(5L, boitierRepository.findById(results.get(4).getBoitierId()).orElseThrow()
+                .getDevice().getDeviceMicroserviceId());
+        verify(deviceService, never()).getDeviceByIdFromMicroserviceAsync(2L);
+        verify(deviceService, never()).getDeviceByIdFromMicroserviceAsync(3L);
+    }
+
+    @Test
+    void testImportBoitiers_InvalidBoitiersDoNotReserveTheirStock() throws Exception {
+        List<BoitierRequest> requests = new ArrayList<>();
+        // Invalid dates, its device and sim stay free for the next boitier
+        requests.add(new BoitierRequest(1L, 101L, END, START));
+        requests.add(null);
+        requests.add(new BoitierRequest(1L, 101L, START, END));
+
+        BasicResponse response = boitierBatchService.importBoitiers(requests);
+
+        List<BoitierImportItemResponse> results = (List<BoitierImportItemResponse>) response.getContent();
+        assertEquals(List.of(HttpStatus.BAD_REQUEST, HttpStatus.BAD_REQUEST, HttpStatus.CREATED),
+                results.stream().map(BoitierImportItemResponse::getStatus).toList());
+        assertEquals("Boitier is required", results.get(1).getMessage());
+        assertEquals("boitiers[1]", results.get(1).getErrorsList().get(0).getKey());
+        assertEquals(1, boitierRepository.count());
+    }
+
+    @Test
+    void testImportBoitiers_MalformedCsvIsRejected() {
+        BasicException exception = assertThrows(BasicException.class, () -> BoitierCsvParser.parse(String.join("\n",
+                "deviceMicroserviceId,simMicroserviceId,startDate,endDate",
+                "1,101,2099-01-01,2100-01-01",
+                "two,102,2099-01-01,2100-01-01",
+                "3,103,01/01/2099,2100-01-01")));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getResponse().getStatus());
+        assertEquals(List.of("line 3", "line 4"),
+                exception.getResponse().getErrorsList().stream().map(error -> error.getKey()).toList());
+    }
+
+    @Test
+    void testDecommissionBoitiers_DeletesAllTheRowsWithOneStatementPerTable() throws Exception {
+        List<BoitierRequest> requests = new ArrayList<>();
+        for (long i = 1; i <= 50; i++) {
+            requests.add(new BoitierRequest(i, 10_000 + i, START, END));
+        }
+        List<BoitierDTO> boitiers = (List<BoitierDTO>) boitierBatchService.createBoitiersBatch(requests).getContent();
+        List<Long> decommissioned = boitiers.subList(0, 40).stream().map(BoitierDTO::getId).toList();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        BasicResponse response = boitierBatchService.decommissionBoitiers(decommissioned, true);
+
+        assertEquals(HttpStatus.OK, response.getStatus());
+        // One query to resolve the boitiers, one delete per table and one insert per item type
+        assertEquals(1 + 4 + 2, statistics.getPrepareStatementCount());
+        assertEquals(10, boitierRepository.count());
+        assertEquals(10, subscriptionRepository.count());
+        assertEquals(10, deviceRepository.count());
+        assertEquals(10, simRepository.count());
+        assertEquals(80, stockStatusEventRepository.findAll().stream()
+                .filter(event -> event.getItemStatus().equals("lost")).count());
+    }
+
+    @Test
+    void testDecommissionBoitiers_UnknownBoitierDeletesNothing() throws Exception {
+        List<BoitierDTO> boitiers = (List<BoitierDTO>) boitierBatchService.createBoitiersBatch(List.of(
+                new BoitierRequest(1L, 101L, START, END))).getContent();
+
+        BasicException exception = assertThrows(BasicException.class,
+                () -> boitierBatchService.decommissionBoitiers(List.of(boitiers.get(0).getId(), -1L), false));
+
+        assertEquals(HttpStatus.NOT_FOUND, exception.getResponse().getStatus());
+        assertEquals("Boitier -1 not found", exception.getResponse().getErrorsList().get(0).getMessage());
+        assertEquals(1, boitierRepository.count());
+        assertEquals(1, deviceRepository.count());
+    }
+}
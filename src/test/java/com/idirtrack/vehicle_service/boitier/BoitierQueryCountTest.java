@@ -0,0 +1,142 @@
+package com.idirtrack.vehicle_service.boitier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.basic.MetaData;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
+import com.idirtrack.vehicle_service.cache.CountCache;
+import com.idirtrack.vehicle_service.client.Client;
+import com.idirtrack.vehicle_service.device.Device;
+import com.idirtrack.vehicle_service.device.DeviceService;
+import com.idirtrack.vehicle_service.outbox.StockStatusOutbox;
+import com.idirtrack.vehicle_service.sim.Sim;
+import com.idirtrack.vehicle_service.sim.SimService;
+import com.idirtrack.vehicle_service.vehicle.Vehicle;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.cloud.config.enabled=false"
+})
+@Import({ BoitierService.class, CountCache.class, StockStatusOutbox.class })
+class BoitierQueryCountTest {
+
+    @Autowired
+    private BoitierService boitierService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private DeviceService deviceService;
+    @MockBean
+    private SimService simService;
+
+    @Test
+    void testGetAllBoitiersAfter_SeeksWithoutCountQuery() throws Exception {
+        List<Long> ids = persistBoitiers("A", 5, false);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Map<String, Object> first = (Map<String, Object>) boitierService.getAllBoitiersAfter("", 3).getContent();
+        String nextCursor = ((MetaData) first.get("metadata")).getNextCursor();
+        Map<String, Object> second = (Map<String, Object>) boitierService.getAllBoitiersAfter(nextCursor, 3)
+                .getContent();
+
+        assertEquals(ids.subList(0, 3), boitierIds((List<BoitierDTO>) first.get("boitiers")));
+        assertEquals(ids.subList(3, 5), boitierIds((List<BoitierDTO>) second.get("boitiers")));
+        assertNull(((MetaData) second.get("metadata")).getNextCursor());
+        // One select per slice, no count query
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void testGetAllBoitiersAfter_RejectsInvalidSize() throws Exception {
+        persistBoitiers("B", 1, false);
+
+        for (int size : new int[] { 0, -1, 1001, Integer.MAX_VALUE }) {
+            BasicException exception = assertThrows(BasicException.class,
+                    () -> boitierService.getAllBoitiersAfter("", size));
+            assertEquals(HttpStatus.BAD_REQUEST, exception.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    void testGetUnassignedBoitiersAfter_SeeksOnlyTheFreeBoitiersWithoutCountQuery() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.addAll(persistBoitiers("C-" + i, 1, false));
+            persistBoitiers("D-" + i, 1, true);
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        BasicResponse first = boitierService.getUnassignedBoitiersAfter("", 3);
+        BasicResponse second = boitierService.getUnassignedBoitiersAfter(first.getMetadata().getNextCursor(), 3);
+
+        assertEquals(ids.subList(0, 3), boitierIds((List<BoitierDTO>) first.getContent()));
+        assertEquals(ids.subList(3, 5), boitierIds((List<BoitierDTO>) second.getContent()));
+        assertNull(second.getMetadata().getNextCursor());
+        // One select per slice, no count query
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void testGetUnassignedBoitiersAfter_RejectsInvalidSize() throws Exception {
+        persistBoitiers("E", 1, false);
+
+        for (int size : new int[] { 0, -1, 1001, Integer.MAX_VALUE }) {
+            BasicException exception = assertThrows(BasicException.class,
+                    () -> boitierService.getUnassignedBoitiersAfter("", size));
+            assertEquals(HttpStatus.BAD_REQUEST, exception.getResponse().getStatus());
+        }
+    }
+
+    private List<Long> boitierIds(List<BoitierDTO> boitiers) {
+        return boitiers.stream().map(BoitierDTO::getId).toList();
+    }
+
+    private List<Long> persistBoitiers(String prefix, int boitiersCount, boolean attached) {
+        Vehicle vehicle = null;
+        if (attached) {
+            Client client = entityManager.persist(Client.builder().name("client").company("company").build());
+            vehicle = entityManager.persist(Vehicle.builder().matricule(prefix).type("truck").client(client).build());
+        }
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < boitiersCount; i++) {
+            Device device = entityManager.persist(Device.builder().imei(prefix + "-" + i).build());
+            Sim sim = entityManager.persist(Sim.builder().phone(prefix + "-" + i).build());
+            ids.add(entityManager.persist(Boitier.builder().vehicle(vehicle).device(device).sim(sim).build()).getId());
+        }
+
+        // Start the read from an empty persistence context
+        entityManager.flush();
+        entityManager.clear();
+        return ids;
+    }
+}
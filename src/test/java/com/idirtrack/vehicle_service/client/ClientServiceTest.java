@@ -0,0 +1,117 @@
+package com.idirtrack.vehicle_service.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ClientServiceTest {
+
+    private final ClientRepository clientRepository = mock(ClientRepository.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ClientService clientService;
+
+    @BeforeEach
+    void setUp() {
+        clientService = spy(new ClientService(Duration.ofMinutes(10), 100, meterRegistry));
+        ReflectionTestUtils.setField(clientService, "clientRepository", clientRepository);
+    }
+
+    @Test
+    void testGetOrCreateClient_KnownClientIsReadOnce() {
+        when(clientRepository.findByClientMicroserviceId(7L))
+                .thenReturn(Client.builder().id(1L).clientMicroserviceId(7L).name("client").build());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1L, clientService.getOrCreateClient(7L).getId());
+        }
+
+        verify(clientRepository, times(1)).findByClientMicroserviceId(7L);
+        verify(clientService, times(0)).getClientFormUserMicroservice(any());
+        assertEquals(9, meterRegistry.get("cache.gets").tag("cache", "clients").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "clients").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void testGetOrCreateClient_ConcurrentFirstLookupsLoadTheClientOnce() throws Exception {
+        // The user microservice answers slowly, while the other lookups wait
+        doAnswer(invocation -> {
+            Thread.sleep(200);
+            return ClientDTO.builder().clientMicroserviceId(8L).name("client").company("company").build();
+        }).when(clientService).getClientFormUserMicroservice(8L);
+        when(clientRepository.save(any(Client.class))).thenAnswer(invocation -> {
+            Client client = invocation.getArgument(0);
+            client.setId(2L);
+            return client;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Client>> lookups = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            lookups.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return clientService.getOrCreateClient(8L);
+            }, executor));
+        }
+        start.countDown();
+
+        lookups.forEach(lookup -> assertEquals(2L, lookup.join().getId()));
+        verify(clientService, times(1)).getClientFormUserMicroservice(8L);
+        verify(clientRepository, times(1)).save(any(Client.class));
+        executor.shutdown();
+    }
+
+    @Test
+    void testGetOrCreateClient_ClientSavedMeanwhileIsRead() {
+        doReturn(ClientDTO.builder().clientMicroserviceId(10L).name("client").company("company").build())
+                .when(clientService).getClientFormUserMicroservice(10L);
+        // Another instance saves the client between the lookup and the insert
+        when(clientRepository.findByClientMicroserviceId(10L))
+                .thenReturn(null)
+                .thenReturn(Client.builder().id(3L).clientMicroserviceId(10L).name("client").build());
+        when(clientRepository.save(any(Client.class)))
+                .thenThrow(new DataIntegrityViolationException("uk_clients_client_microservice_id"));
+
+        assertEquals(3L, clientService.getOrCreateClient(10L).getId());
+    }
+
+    @Test
+    void testGetOrCreateClient_UnknownClientIsNotCached() {
+        doReturn(null).when(clientService).getClientFormUserMicroservice(9L);
+
+        assertNull(clientService.getOrCreateClient(9L));
+        assertNull(clientService.getOrCreateClient(9L));
+
+        verify(clientService, times(2)).getClientFormUserMicroservice(9L);
+    }
+}
@@ -0,0 +1,158 @@
+package com.idirtrack.vehicle_service.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.springboot3.bulkhead.autoconfigure.BulkheadAutoConfiguration;
+import io.github.resilience4j.springboot3.circuitbreaker.autoconfigure.CircuitBreakerAutoConfiguration;
+import io.github.resilience4j.springboot3.circuitbreaker.autoconfigure.CircuitBreakerMetricsAutoConfiguration;
+import io.github.resilience4j.springboot3.timelimiter.autoconfigure.TimeLimiterAutoConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class DownstreamResilienceFilterTest {
+
+    // Stub of the stock microservice, answering with the status and after the
+    // delay of the test
+    private HttpServer stockService;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int responseStatus = 500;
+    private volatile long responseDelayMillis = 0;
+
+    private ApplicationContextRunner contextRunner;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stockService = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stockService.setExecutor(Executors.newCachedThreadPool());
+        stockService.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            try {
+                Thread.sleep(responseDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(responseStatus, -1);
+            exchange.close();
+        });
+        stockService.start();
+
+        // The Spring Boot conversion service reads the durations like "30s"
+        contextRunner = new ApplicationContextRunner()
+                .withInitializer(context -> context.getBeanFactory()
+                        .setConversionService(ApplicationConversionService.getSharedInstance()))
+                .withConfiguration(AutoConfigurations.of(CircuitBreakerAutoConfiguration.class,
+                        CircuitBreakerMetricsAutoConfiguration.class, BulkheadAutoConfiguration.class,
+                        TimeLimiterAutoConfiguration.class))
+                .withUserConfiguration(ResilienceTestConfig.class)
+                .withPropertyValues(
+                        "webclient.stock-service.base-url=http://localhost:" + stockService.getAddress().getPort(),
+                        "resilience4j.circuitbreaker.instances.stock-service.sliding-window-size=4",
+                        "resilience4j.circuitbreaker.instances.stock-service.minimum-number-of-calls=4",
+                        "resilience4j.circuitbreaker.instances.stock-service.wait-duration-in-open-state=1m",
+                        "resilience4j.circuitbreaker.instances.stock-service.ignore-exceptions="
+                                + BulkheadFullException.class.getName(),
+                        "resilience4j.bulkhead.instances.stock-service.max-concurrent-calls=2",
+                        "resilience4j.timelimiter.instances.stock-service.timeout-duration=5s");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stockService.stop(0);
+    }
+
+    @Test
+    void testOpenCircuit_FailsFast() {
+        contextRunner.run(context -> {
+            CircuitBreaker circuitBreaker = context.getBean(CircuitBreakerRegistry.class).circuitBreaker("stock-service");
+
+            // The 5xx responses open the circuit
+            WebClient stockServiceWebClient = context.getBean("stockServiceWebClient", WebClient.class);
+            for (int i = 0; i < 4; i++) {
+                stockServiceWebClient.get().uri("/stock-api/devices/1/").exchangeToMono(response -> response.releaseBody())
+                        .onErrorComplete()
+                        .block();
+            }
+            assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+            // The next request is rejected at once, without reaching the stock microservice
+            long start = System.nanoTime();
+            assertFalse(stockServiceWebClient.get().uri("/stock-api/devices/1/")
+                    .retrieve()
+                    .toBodilessEntity()
+                    .map(entity -> true)
+                    .onErrorResume(DownstreamResilienceFilter::isRejected, e -> Mono.just(false))
+                    .block());
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) < 0);
+            assertEquals(4, requests.get());
+
+            // The state of the circuit is published
+            assertNotNull(context.getBean(MeterRegistry.class).find("resilience4j.circuitbreaker.state")
+                    .tag("name", "stock-service")
+                    .gauge());
+        });
+    }
+
+    @Test
+    void testFullBulkhead_RejectsTheExtraRequests() {
+        responseStatus = 200;
+        responseDelayMillis = 500;
+        contextRunner.run(context -> {
+            WebClient stockServiceWebClient = context.getBean("stockServiceWebClient", WebClient.class);
+
+            List<Boolean> results = Flux.fromStream(IntStream.range(0, 5).boxed())
+                    .flatMap(i -> stockServiceWebClient.get().uri("/stock-api/devices/" + i + "/")
+                            .retrieve()
+                            .toBodilessEntity()
+                            .map(entity -> true)
+                            .onErrorResume(DownstreamResilienceFilter::isRejected, e -> Mono.just(false)))
+                    .collectList()
+                    .block();
+
+            // Two requests in flight at once, the others are rejected without a call
+            assertEquals(2, results.stream().filter(Boolean::booleanValue).count());
+            assertEquals(2, requests.get());
+            // A full bulkhead does not open the circuit
+            assertEquals(CircuitBreaker.State.CLOSED,
+                    context.getBean(CircuitBreakerRegistry.class).circuitBreaker("stock-service").getState());
+        });
+    }
+
+    @Configuration
+    @Import(WebClientConfig.class)
+    static class ResilienceTestConfig {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.idirtrack.vehicle_service.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class StockStatusExecutorConfigTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // The Spring Boot conversion service reads the durations like "30s"
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withInitializer(context -> context.getBeanFactory()
+                    .setConversionService(ApplicationConversionService.getSharedInstance()))
+            .withUserConfiguration(StockStatusExecutorConfig.class)
+            .withBean(MeterRegistry.class, () -> meterRegistry);
+
+    @Test
+    void testBoundedExecutor_CountsRejectionsAndDrainsOnShutdown() {
+        AtomicInteger completed = new AtomicInteger();
+        contextRunner
+                .withPropertyValues("stock-status.executor.core-size=1", "stock-status.executor.max-size=1",
+                        "stock-status.executor.queue-capacity=1")
+                .run(context -> {
+                    AsyncTaskExecutor executor = context.getBean("stockStatusExecutor", AsyncTaskExecutor.class);
+                    for (int i = 0; i < 3; i++) {
+                        executor.execute(() -> sleepThen(200, completed));
+                    }
+                    assertEquals(1.0, meterRegistry.counter("stock.status.executor.rejected").count());
+                });
+        // The queued status changes are not lost when the context closes
+        assertEquals(3, completed.get());
+    }
+
+    @Test
+    void testVirtualThreadsExecutor_DrainsOnShutdown() {
+        AtomicInteger completed = new AtomicInteger();
+        contextRunner
+                .withPropertyValues("stock-status.executor.virtual-threads=true")
+                .run(context -> {
+                    AsyncTaskExecutor executor = context.getBean("stockStatusExecutor", AsyncTaskExecutor.class);
+                    for (int i = 0; i < 20; i++) {
+                        executor.execute(() -> sleepThen(200, completed));
+                    }
+                });
+        assertEquals(20, completed.get());
+    }
+
+    private void sleepThen(long millis, AtomicInteger completed) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        completed.incrementAndGet();
+    }
+}
@@ -0,0 +1,85 @@
+package com.idirtrack.vehicle_service.config;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.resilience4j.springboot3.bulkhead.autoconfigure.BulkheadAutoConfiguration;
+import io.github.resilience4j.springboot3.circuitbreaker.autoconfigure.CircuitBreakerAutoConfiguration;
+import io.github.resilience4j.springboot3.timelimiter.autoconfigure.TimeLimiterAutoConfiguration;
+import io.micrometer.core.instrument.Metrics;
+
+class WebClientConfigTest {
+
+    // Stub of the stock microservice, answering after 5 seconds
+    private HttpServer stockService;
+
+    // The Spring Boot conversion service reads the durations like "30s"
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withInitializer(context -> context.getBeanFactory()
+                    .setConversionService(ApplicationConversionService.getSharedInstance()))
+            .withConfiguration(AutoConfigurations.of(CircuitBreakerAutoConfiguration.class,
+                    BulkheadAutoConfiguration.class, TimeLimiterAutoConfiguration.class))
+            .withUserConfiguration(WebClientConfig.class);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stockService = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stockService.setExecutor(Executors.newCachedThreadPool());
+        stockService.createContext("/", exchange -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        stockService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stockService.stop(0);
+    }
+
+    @Test
+    void testStockServiceWebClient_ReadTimeoutBoundsTheWait() {
+        contextRunner
+                .withPropertyValues(
+                        "webclient.stock-service.base-url=http://localhost:" + stockService.getAddress().getPort(),
+                        "webclient.stock-service.read-timeout=200ms")
+                .run(context -> {
+                    WebClient stockServiceWebClient = context.getBean("stockServiceWebClient", WebClient.class);
+
+                    long start = System.nanoTime();
+                    assertThrows(WebClientRequestException.class, () -> stockServiceWebClient.get()
+                            .uri("/stock-api/devices/1/")
+                            .retrieve()
+                            .toBodilessEntity()
+                            .block());
+                    assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(3)) < 0);
+
+                    // The pool of the stock microservice publishes its metrics
+                    assertNotNull(Metrics.globalRegistry.find("reactor.netty.connection.provider.max.connections")
+                            .tag("name", "stock-service")
+                            .gauge());
+                });
+    }
+}
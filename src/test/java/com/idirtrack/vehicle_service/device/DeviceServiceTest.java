@@ -0,0 +1,88 @@
+package com.idirtrack.vehicle_service.device;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DeviceServiceTest {
+
+    // Stub of the stock microservice, counting the requests, knowing the device 1
+    // only and answering its lookups slowly
+    private HttpServer stockService;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final DeviceService deviceService = new DeviceService(Duration.ofSeconds(30), 100,
+            new SimpleMeterRegistry());
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stockService = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stockService.setExecutor(Executors.newCachedThreadPool());
+        stockService.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            String json = "{\"status\":\"OK\"}";
+            if (exchange.getRequestURI().getPath().equals("/stock-api/devices/1/")) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                json = "{\"status\":\"OK\",\"content\":{\"id\":1,\"imei\":\"123456\",\"deviceType\":\"FMB\"}}";
+            }
+            byte[] body = json.getBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        stockService.start();
+
+        ReflectionTestUtils.setField(deviceService, "stockServiceWebClient", WebClient.builder()
+                .baseUrl("http://localhost:" + stockService.getAddress().getPort())
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        stockService.stop(0);
+    }
+
+    @Test
+    void testGetDeviceByIdFromMicroservice_ConcurrentLookupsShareOneRequest() throws Exception {
+        List<CompletableFuture<DeviceDTO>> lookups = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lookups.add(deviceService.getDeviceByIdFromMicroserviceAsync(1L));
+        }
+        lookups.forEach(lookup -> assertEquals("123456", lookup.join().getImei()));
+
+        // The device is then read from the cache
+        assertEquals(1L, deviceService.getDeviceByIdFromMicroservice(1L).getDeviceMicroserviceId());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void testGetDeviceByIdFromMicroservice_UnknownDeviceIsNotCached() {
+        assertThrows(BasicException.class, () -> deviceService.getDeviceByIdFromMicroservice(2L));
+        assertThrows(BasicException.class, () -> deviceService.getDeviceByIdFromMicroservice(2L));
+        assertEquals(2, requests.get());
+    }
+}
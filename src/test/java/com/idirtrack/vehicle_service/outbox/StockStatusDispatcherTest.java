@@ -0,0 +1,162 @@
+package com.idirtrack.vehicle_service.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.idirtrack.vehicle_service.stock.StockItemType;
+import com.idirtrack.vehicle_service.stock.StockStatusClient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.cloud.config.enabled=false",
+        "stock-status.outbox.max-attempts=2",
+        "stock-status.outbox.initial-backoff=0s"
+})
+@Import({ StockStatusOutbox.class, StockStatusDispatcher.class, SimpleMeterRegistry.class })
+class StockStatusDispatcherTest {
+
+    @Autowired
+    private StockStatusOutbox stockStatusOutbox;
+
+    @Autowired
+    private StockStatusDispatcher stockStatusDispatcher;
+
+    @SpyBean
+    private StockStatusEventRepository stockStatusEventRepository;
+
+    @MockBean
+    private StockStatusClient stockStatusClient;
+
+    @Test
+    void testDispatchBatch_SendsEachItemInOrderWithItsIdempotencyKey() {
+        stockStatusOutbox.deviceStatusChanged(1L, "pending");
+        stockStatusOutbox.simStatusChanged(2L, "pending");
+        stockStatusOutbox.deviceStatusChanged(1L, "installed");
+        when(stockStatusClient.changeStatus(any(), anyLong(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+
+        assertEquals(3, stockStatusDispatcher.dispatchBatch());
+
+        List<StockStatusEvent> events = stockStatusEventRepository.findAll();
+        InOrder deviceCalls = inOrder(stockStatusClient);
+        deviceCalls.verify(stockStatusClient).changeStatus(StockItemType.DEVICE, 1L, "pending",
+                events.get(0).getIdempotencyKey());
+        deviceCalls.verify(stockStatusClient).changeStatus(StockItemType.DEVICE, 1L, "installed",
+                events.get(2).getIdempotencyKey());
+        verify(stockStatusClient).changeStatus(StockItemType.SIM, 2L, "pending", events.get(1).getIdempotencyKey());
+        events.forEach(event -> {
+            assertEquals(OutboxStatus.DISPATCHED, event.getStatus());
+            assertNotNull(event.getDispatchedAt());
+        });
+    }
+
+    @Test
+    void testDispatchBatch_FailedEventHoldsBackItsItemUntilGivenUp() {
+        stockStatusOutbox.deviceStatusChanged(1L, "pending");
+        stockStatusOutbox.deviceStatusChanged(1L, "installed");
+        when(stockStatusClient.changeStatus(eq(StockItemType.DEVICE), eq(1L), eq("pending"), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(false));
+        when(stockStatusClient.changeStatus(eq(StockItemType.DEVICE), eq(1L), eq("installed"), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+
+        // The first attempt fails, the newer status is not sent before it
+        assertEquals(0, stockStatusDispatcher.dispatchBatch());
+        verify(stockStatusClient, never()).changeStatus(any(), anyLong(), eq("installed"), anyString());
+        List<StockStatusEvent> events = stockStatusEventRepository.findAll();
+        assertEquals(OutboxStatus.PENDING, events.get(0).getStatus());
+        assertEquals(1, events.get(0).getAttempts());
+        assertNotNull(events.get(0).getLastError());
+
+        // The second attempt fails too, the event is given up and the next one is sent
+        assertEquals(0, stockStatusDispatcher.dispatchBatch());
+        assertEquals(OutboxStatus.FAILED, stockStatusEventRepository.findAll().get(0).getStatus());
+        assertEquals(1, stockStatusDispatcher.dispatchBatch());
+        assertEquals(OutboxStatus.DISPATCHED, stockStatusEventRepository.findAll().get(1).getStatus());
+    }
+
+    @Test
+    void testDispatchBatch_BackedOffEventsDoNotHoldBackTheDueOnes() {
+        ReflectionTestUtils.setField(stockStatusDispatcher, "batchSize", 2);
+        try {
+            // More events waiting for their next attempt than a batch, in front of a due one
+            for (long device = 1; device <= 3; device++) {
+                stockStatusOutbox.deviceStatusChanged(device, "installed");
+            }
+            stockStatusOutbox.deviceStatusChanged(4L, "installed");
+            List<StockStatusEvent> backedOff = stockStatusEventRepository.findAll().subList(0, 3);
+            backedOff.forEach(event -> event.setNextAttemptAt(Instant.now().plusSeconds(60)));
+            stockStatusEventRepository.saveAll(backedOff);
+            when(stockStatusClient.changeStatus(any(), anyLong(), anyString(), anyString()))
+                    .thenReturn(CompletableFuture.completedFuture(true));
+
+            assertEquals(1, stockStatusDispatcher.dispatchBatch());
+            verify(stockStatusClient).changeStatus(eq(StockItemType.DEVICE), eq(4L), eq("installed"), anyString());
+            verify(stockStatusClient, never()).changeStatus(any(), eq(1L), anyString(), anyString());
+        } finally {
+            ReflectionTestUtils.setField(stockStatusDispatcher, "batchSize", 100);
+        }
+    }
+
+    @Test
+    void testDispatchBatch_ClaimedEventsAreNotDueDuringTheSend() {
+        stockStatusOutbox.deviceStatusChanged(1L, "pending");
+        stockStatusOutbox.deviceStatusChanged(1L, "installed");
+        List<List<StockStatusEvent>> dueDuringSend = new ArrayList<>();
+        when(stockStatusClient.changeStatus(any(), anyLong(), anyString(), anyString())).thenAnswer(invocation -> {
+            // Another instance polling now finds nothing to send
+            dueDuringSend.add(stockStatusEventRepository.findDueForUpdate(OutboxStatus.PENDING, Instant.now(),
+                    Limit.of(100)));
+            return CompletableFuture.completedFuture(true);
+        });
+
+        assertEquals(2, stockStatusDispatcher.dispatchBatch());
+        dueDuringSend.forEach(due -> assertTrue(due.isEmpty()));
+    }
+
+    @Test
+    void testDispatchBatch_EventsBehindOneClaimedElsewhereAreNotClaimed() {
+        stockStatusOutbox.deviceStatusChanged(1L, "pending");
+        stockStatusOutbox.deviceStatusChanged(1L, "installed");
+        stockStatusOutbox.deviceStatusChanged(2L, "installed");
+        // The oldest event of the device 1 is locked by another instance, the locking read skips it
+        doReturn(stockStatusEventRepository.findAll().subList(1, 3))
+                .when(stockStatusEventRepository).findDueForUpdate(any(), any(), any());
+        when(stockStatusClient.changeStatus(any(), anyLong(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+
+        assertEquals(1, stockStatusDispatcher.dispatchBatch());
+        verify(stockStatusClient).changeStatus(eq(StockItemType.DEVICE), eq(2L), eq("installed"), anyString());
+        verify(stockStatusClient, never()).changeStatus(any(), eq(1L), anyString(), anyString());
+        List<StockStatusEvent> events = stockStatusEventRepository.findAll();
+        assertEquals(OutboxStatus.PENDING, events.get(1).getStatus());
+        assertTrue(events.get(1).getNextAttemptAt().isBefore(Instant.now().plusSeconds(1)));
+    }
+}
@@ -0,0 +1,146 @@
+package com.idirtrack.vehicle_service.reactive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
+
+import io.r2dbc.spi.ConnectionFactories;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class ReactiveReadServiceTest {
+
+    private DatabaseClient databaseClient;
+    private ReactiveReadService reactiveReadService;
+
+    @BeforeEach
+    void setUp() {
+        // A fresh in-memory database with the tables of the entities
+        databaseClient = DatabaseClient.create(ConnectionFactories.get(
+                "r2dbc:h2:mem:///reactive-read-" + System.nanoTime() + "?options=DB_CLOSE_DELAY=-1"));
+        reactiveReadService = new ReactiveReadService(databaseClient, 2);
+
+        Flux.fromIterable(List.of(
+                "CREATE TABLE clients (id BIGINT PRIMARY KEY, client_microservice_id BIGINT, name VARCHAR(255), "
+                        + "company VARCHAR(255))",
+                "CREATE TABLE vehicles (id BIGINT PRIMARY KEY, matricule VARCHAR(255), type VARCHAR(255), "
+                        + "client_id BIGINT)",
+                "CREATE TABLE devices (id BIGINT PRIMARY KEY, imei VARCHAR(255), type VARCHAR(255), "
+                        + "device_microservice_id BIGINT)",
+                "CREATE TABLE sims (id BIGINT PRIMARY KEY, phone VARCHAR(255), ccid VARCHAR(255), "
+                        + "operator_name VARCHAR(255), sim_microservice_id BIGINT)",
+                "CREATE TABLE boitiers (id BIGINT PRIMARY KEY, vehicle_id BIGINT, device_id BIGINT, sim_id BIGINT)",
+                "CREATE TABLE subscriptions (id BIGINT PRIMARY KEY, start_date DATE, end_date DATE, boitier_id BIGINT)",
+                "INSERT INTO clients VALUES (1, 10, 'client', 'company')",
+                "INSERT INTO vehicles VALUES (1, '1234-A-1', 'truck', 1), (2, '5678-B-2', 'car', 1)",
+                "INSERT INTO devices VALUES (1, 'imei-1', 'FMB920', 101), (2, 'imei-2', 'FMB920', 102), "
+                        + "(3, 'imei-3', 'FMB920', 103), (4, 'imei-4', 'FMB920', 104)",
+                "INSERT INTO sims VALUES (1, '0600000001', 'ccid-1', 'IAM', 201), (2, '0600000002', 'ccid-2', 'IAM', 202), "
+                        + "(3, '0600000003', 'ccid-3', 'IAM', 203), (4, '0600000004', 'ccid-4', 'IAM', 204)",
+                "INSERT INTO boitiers VALUES (1, 1, 1, 1), (2, 1, 2, 2), (3, NULL, 3, 3), (4, NULL, 4, 4)",
+                "INSERT INTO subscriptions VALUES (1, '2023-01-01', '2024-01-01', 1), "
+                        + "(2, '2024-01-01', '2025-01-01', 1)"))
+                .concatMap(sql -> databaseClient.sql(sql).then())
+                .blockLast();
+    }
+
+    @Test
+    void testGetVehicleById_ReturnsTheVehicleWithItsClient() {
+        StepVerifier.create(reactiveReadService.getVehicleById(1L))
+                .assertNext(response -> {
+                    assertEquals("1234-A-1", response.getVehicle().getMatricule());
+                    assertEquals(10L, response.getClient().getClientMicroserviceId());
+                })
+                .verifyComplete();
+
+        StepVerifier.create(reactiveReadService.getVehicleById(99L))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.NOT_FOUND,
+                        ((BasicException) e).getResponse().getStatus()))
+                .verify();
+    }
+
+    @Test
+    void testGetVehicleBoitiers_StreamsOnDemandWithTheLatestSubscription() {
+        // One boitier per request of the subscriber
+        StepVerifier.create(reactiveReadService.getVehicleBoitiers(1L), 1)
+                .assertNext(boitier -> {
+                    assertEquals(1L, boitier.getId());
+                    assertEquals("imei-1", boitier.getDevice().getImei());
+                    assertEquals(2L, boitier.getSubscription().getId());
+                    assertEquals("2025-01-01", boitier.getSubscription().getEndDate().toString());
+                })
+                .thenRequest(1)
+                .assertNext(boitier -> {
+                    assertEquals(2L, boitier.getId());
+                    assertNull(boitier.getSubscription());
+                })
+                .verifyComplete();
+
+        // A vehicle without boitiers is an empty stream, an unknown vehicle an error
+        StepVerifier.create(reactiveReadService.getVehicleBoitiers(2L)).verifyComplete();
+        StepVerifier.create(reactiveReadService.getVehicleBoitiers(99L)).expectError(BasicException.class).verify();
+    }
+
+    @Test
+    void testGetUnassignedBoitiers_ResumesAfterTheCursor() {
+        assertEquals(List.of(3L, 4L), reactiveReadService.getUnassignedBoitiers(null)
+                .map(BoitierDTO::getId).collectList().block());
+        assertEquals(List.of(4L), reactiveReadService.getUnassignedBoitiers(3L)
+                .map(BoitierDTO::getId).collectList().block());
+    }
+
+    @Test
+    void testController_StreamsNdjsonAndAnswersTheErrors() throws Exception {
+        ReactiveReadController controller = new ReactiveReadController();
+        ReflectionTestUtils.setField(controller, "reactiveReadService", reactiveReadService);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        // One boitier per line
+        MvcResult result = mockMvc.perform(get("/vehicle-api/reactive/vehicles/1/boities/"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        assertEquals(2, body.lines().count());
+
+        // An unknown vehicle is answered with its BasicResponse
+        result = mockMvc.perform(get("/vehicle-api/reactive/vehicles/99/boities/"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message").value("Vehicle not found"));
+
+        result = mockMvc.perform(get("/vehicle-api/reactive/vehicles/1/"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.vehicle.matricule").value("1234-A-1"));
+
+        mockMvc.perform(get("/vehicle-api/reactive/boitier/unassigned/").param("after", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+}
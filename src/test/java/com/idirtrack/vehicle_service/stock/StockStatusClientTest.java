@@ -0,0 +1,135 @@
+package com.idirtrack.vehicle_service.stock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.sun.net.httpserver.HttpServer;
+
+class StockStatusClientTest {
+
+    // Stub of the stock microservice, recording the path, query and body of each
+    // request, and without batch endpoint if asked
+    private HttpServer stockService;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private volatile boolean batchUnsupported;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stockService = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stockService.createContext("/", exchange -> {
+            requests.add(exchange.getRequestURI() + " "
+                    + new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            boolean batch = exchange.getRequestURI().getPath().endsWith("/batch");
+            exchange.sendResponseHeaders(batch && batchUnsupported ? 404 : 200, -1);
+            exchange.close();
+        });
+        stockService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stockService.stop(0);
+    }
+
+    @Test
+    void testChangeStatus_SendsOneRequestPerItemTypeAndStatus() {
+        StockStatusClient client = client(Duration.ofMillis(200), 100, true);
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (long id = 1; id <= 40; id++) {
+            results.add(client.changeStatus(StockItemType.DEVICE, id, "installed", "device-" + id));
+            results.add(client.changeStatus(StockItemType.SIM, id, "installed", "sim-" + id));
+        }
+        for (long id = 41; id <= 60; id++) {
+            results.add(client.changeStatus(StockItemType.DEVICE, id, "pending", "device-" + id));
+        }
+
+        // 100 status changes, 3 requests
+        results.forEach(result -> assertTrue(result.join()));
+        assertEquals(3, requests.size());
+        assertTrue(requests.stream().anyMatch(request -> request.startsWith("/stock-api/sim/status/batch")));
+    }
+
+    @Test
+    void testChangeStatus_SameChangeIsSentOnce() {
+        StockStatusClient client = client(Duration.ofMillis(200), 100, true);
+
+        CompletableFuture<Boolean> first = client.changeStatus(StockItemType.DEVICE, 1L, "lost", "first");
+        CompletableFuture<Boolean> second = client.changeStatus(StockItemType.DEVICE, 1L, "lost", "second");
+
+        assertTrue(first.join());
+        assertTrue(second.join());
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).contains("\"idempotencyKey\":\"first\""));
+        assertFalse(requests.get(0).contains("second"));
+    }
+
+    @Test
+    void testChangeStatus_FullBatchIsSentBeforeTheEndOfTheWindow() {
+        StockStatusClient client = client(Duration.ofSeconds(10), 10, true);
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            results.add(client.changeStatus(StockItemType.SIM, id, "non_installed", "sim-" + id));
+        }
+
+        // Two full batches, sent without waiting for the 10 seconds window
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                .orTimeout(5, TimeUnit.SECONDS)
+                .join();
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    void testChangeStatus_WithoutBatchModeSendsOneRequestPerItem() {
+        StockStatusClient client = client(Duration.ofMillis(200), 100, false);
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            results.add(client.changeStatus(StockItemType.DEVICE, id, "installed", "device-" + id));
+        }
+
+        results.forEach(result -> assertTrue(result.join()));
+        assertEquals(3, requests.size());
+        assertTrue(requests.contains("/stock-api/devices/status/?id=2&status=installed "));
+    }
+
+    @Test
+    void testChangeStatus_MissingBatchEndpointFallsBackToOneRequestPerItem() {
+        batchUnsupported = true;
+        StockStatusClient client = client(Duration.ofMillis(200), 100, true);
+
+        CompletableFuture<Boolean> first = client.changeStatus(StockItemType.SIM, 1L, "installed", "sim-1");
+        CompletableFuture<Boolean> second = client.changeStatus(StockItemType.SIM, 2L, "installed", "sim-2");
+
+        assertTrue(first.join());
+        assertTrue(second.join());
+        // The refused batch, then one request per sim
+        assertEquals(3, requests.size());
+        assertTrue(requests.get(0).startsWith("/stock-api/sim/status/batch"));
+        assertTrue(requests.contains("/stock-api/sim/status/?id=1&status=installed "));
+    }
+
+    private StockStatusClient client(Duration bufferWindow, int maxBatchSize, boolean batchEnabled) {
+        WebClient stockServiceWebClient = WebClient.builder()
+                .baseUrl("http://localhost:" + stockService.getAddress().getPort())
+                .build();
+        return new StockStatusClient(stockServiceWebClient, bufferWindow, maxBatchSize, batchEnabled, 8);
+    }
+}
@@ -0,0 +1,153 @@
+package com.idirtrack.vehicle_service.subscription;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.boitier.Boitier;
+import com.idirtrack.vehicle_service.client.Client;
+import com.idirtrack.vehicle_service.device.Device;
+import com.idirtrack.vehicle_service.sim.Sim;
+import com.idirtrack.vehicle_service.vehicle.Vehicle;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.cloud.config.enabled=false",
+        "subscription.expiry.notice-days=31",
+        "subscription.expiry.chunk-size=2"
+})
+@Import({ SubscriptionService.class, SubscriptionExpiryScanner.class })
+@RecordApplicationEvents
+class SubscriptionExpiryTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private SubscriptionExpiryScanner subscriptionExpiryScanner;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
+    @BeforeEach
+    void setUp() {
+        Client client = entityManager.persist(Client.builder().clientMicroserviceId(7L).name("client").build());
+        Vehicle vehicle = entityManager.persist(Vehicle.builder().matricule("A-1").client(client).build());
+
+        // Renewed in the past, the latest subscription ends in 5 days
+        persistBoitier("installed", vehicle, -10, 5);
+        // Not installed, ends in 20 days
+        persistBoitier("free", null, 20);
+        // Already renewed for next year
+        persistBoitier("renewed", null, 3, 400);
+        // Ends in 60 days
+        persistBoitier("later", null, 60);
+        // Same end date as the installed one, and at the end of the notice days
+        persistBoitier("same-day", null, 5);
+        persistBoitier("last-day", null, 31);
+
+        // The reads start from an empty persistence context
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void testGetExpiringSubscriptions_PagesTheLatestSubscriptionsFirstToEndFirst() throws Exception {
+        BasicResponse first = subscriptionService.getExpiringSubscriptions(30, 1, 2);
+        BasicResponse second = subscriptionService.getExpiringSubscriptions(30, 2, 2);
+
+        assertEquals(List.of("installed", "same-day"), imeis(first));
+        assertEquals(List.of("free"), imeis(second));
+        assertTrue(first.getMetadata().getHasNext());
+        assertFalse(second.getMetadata().getHasNext());
+
+        SubscriptionExpiry installed = ((List<SubscriptionExpiry>) first.getContent()).get(0);
+        assertEquals(Date.valueOf(TODAY.plusDays(5)), installed.getEndDate());
+        assertEquals("A-1", installed.getMatricule());
+        assertEquals(7L, installed.getClientMicroserviceId());
+    }
+
+    @Test
+    void testGetExpiringSubscriptions_RejectsNegativeDays() {
+        BasicException exception = assertThrows(BasicException.class,
+                () -> subscriptionService.getExpiringSubscriptions(-1, 1, 2));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getResponse().getStatus());
+    }
+
+    @Test
+    void testGetExpiringSubscriptions_RejectsInvalidPageAndSize() {
+        for (int[] pageAndSize : new int[][] { { 0, 2 }, { -1, 2 }, { 1, 0 }, { 1, 1001 }, { 1, Integer.MAX_VALUE } }) {
+            BasicException exception = assertThrows(BasicException.class,
+                    () -> subscriptionService.getExpiringSubscriptions(30, pageAndSize[0], pageAndSize[1]));
+
+            assertEquals(HttpStatus.BAD_REQUEST, exception.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    void testScanExpiring_PublishesTheNoticesInChunksWithoutLoadingEntities() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        int notified = subscriptionExpiryScanner.scanExpiring(TODAY);
+
+        assertEquals(4, notified);
+        List<List<String>> chunks = applicationEvents.stream(SubscriptionRenewalNotice.class)
+                .map(notice -> notice.getSubscriptions().stream().map(SubscriptionExpiry::getImei).toList())
+                .toList();
+        assertEquals(List.of(List.of("installed", "same-day"), List.of("free", "last-day")), chunks);
+        // One query per chunk, and one more to find the end
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    private List<String> imeis(BasicResponse response) {
+        return ((List<SubscriptionExpiry>) response.getContent()).stream().map(SubscriptionExpiry::getImei).toList();
+    }
+
+    // A boitier with one subscription per end date, in days from today
+    private void persistBoitier(String imei, Vehicle vehicle, int... endDays) {
+        Device device = entityManager.persist(Device.builder().imei(imei).build());
+        Sim sim = entityManager.persist(Sim.builder().phone("06").build());
+        Boitier boitier = entityManager.persist(Boitier.builder().vehicle(vehicle).device(device).sim(sim).build());
+        for (int endDay : endDays) {
+            entityManager.persist(Subscription.builder()
+                    .startDate(Date.valueOf(TODAY.plusDays(endDay - 365)))
+                    .endDate(Date.valueOf(TODAY.plusDays(endDay)))
+                    .boitier(boitier)
+                    .build());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.idirtrack.vehicle_service.subscription;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import com.idirtrack.vehicle_service.boitier.Boitier;
+import com.idirtrack.vehicle_service.client.Client;
+import com.idirtrack.vehicle_service.device.Device;
+import com.idirtrack.vehicle_service.scheduling.TaskLeaseRepository;
+import com.idirtrack.vehicle_service.sim.Sim;
+import com.idirtrack.vehicle_service.vehicle.Vehicle;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.cloud.config.enabled=false",
+        "subscription.expiry.notice-days=31",
+        "subscription.expiry.chunk-size=2",
+        "subscription.expiry.scan-lease=1h"
+})
+@Import({ SubscriptionExpiryScanner.class, SubscriptionNoticeOutbox.class })
+@RecordApplicationEvents
+class SubscriptionNoticeOutboxTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @Autowired
+    private SubscriptionExpiryScanner subscriptionExpiryScanner;
+
+    @Autowired
+    private SubscriptionNoticeRepository subscriptionNoticeRepository;
+
+    @Autowired
+    private TaskLeaseRepository taskLeaseRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
+    private Long installedSubscriptionId;
+
+    @BeforeEach
+    void setUp() {
+        Client client = entityManager.persist(Client.builder().clientMicroserviceId(7L).name("client").build());
+        Vehicle vehicle = entityManager.persist(Vehicle.builder().matricule("A-1").client(client).build());
+
+        installedSubscriptionId = persistBoitier("installed", vehicle, 5);
+        persistBoitier("free", null, 20);
+        persistBoitier("same-day", null, 5);
+        // Out of the notice days
+        persistBoitier("later", null, 60);
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void testScanExpiring_WritesOneNoticePerSubscription() {
+        subscriptionExpiryScanner.scanExpiring(TODAY);
+        // The next scan finds the same subscriptions
+        subscriptionExpiryScanner.scanExpiring(TODAY);
+
+        List<SubscriptionNotice> notices = subscriptionNoticeRepository.findAll();
+        assertEquals(3, notices.size());
+        SubscriptionNotice installed = subscriptionNoticeRepository.findById(installedSubscriptionId).orElseThrow();
+        assertEquals(Date.valueOf(TODAY.plusDays(5)), installed.getEndDate());
+        assertEquals(7L, installed.getClientMicroserviceId());
+        assertNotNull(installed.getVehicleId());
+        assertNotNull(installed.getCreatedAt());
+        assertNull(installed.getSentAt());
+    }
+
+    @Test
+    void testScanExpiring_RunsOnceDuringTheLease() {
+        subscriptionExpiryScanner.scanExpiring();
+        // Fired by another instance, the lease is still held
+        subscriptionExpiryScanner.scanExpiring();
+
+        // The chunks of a single scan
+        assertEquals(2, applicationEvents.stream(SubscriptionRenewalNotice.class).count());
+        assertEquals(3, subscriptionNoticeRepository.count());
+        assertNotNull(taskLeaseRepository.findById("subscription-expiry-scan").orElseThrow().getLockedBy());
+    }
+
+    // A boitier with one subscription ending in the given days, returns the id of the subscription
+    private Long persistBoitier(String imei, Vehicle vehicle, int endDay) {
+        Device device = entityManager.persist(Device.builder().imei(imei).build());
+        Sim sim = entityManager.persist(Sim.builder().phone("06").build());
+        Boitier boitier = entityManager.persist(Boitier.builder().vehicle(vehicle).device(device).sim(sim).build());
+        return entityManager.persist(Subscription.builder()
+                .startDate(Date.valueOf(TODAY.plusDays(endDay - 365)))
+                .endDate(Date.valueOf(TODAY.plusDays(endDay)))
+                .boitier(boitier)
+                .build()).getId();
+    }
+}
@@ -0,0 +1,106 @@
+package com.idirtrack.vehicle_service.traccar;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in of the TracCar device API for the tests.
+ *
+ * It keeps the created devices by unique id, answers a used unique id with the
+ * 400 of the TracCar unique constraint, and waits a fixed latency before each
+ * answer to simulate the network. It counts the requests, the requests in
+ * flight at once and the client connections, to check the concurrency and the
+ * reuse of the pooled connections.
+ */
+public class FakeTracCarServer implements AutoCloseable {
+
+    private static final Pattern UNIQUE_ID = Pattern.compile("\"uniqueId\":\"([^\"]*)\"");
+
+    private final HttpServer server;
+    private final Duration latency;
+    private final Map<String, String> devices = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    public FakeTracCarServer(Duration latency) throws IOException {
+        this.latency = latency;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/api/devices", this::createDevice);
+        this.server.start();
+    }
+
+    private void createDevice(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+
+        Matcher uniqueId = UNIQUE_ID.matcher(body);
+        if (!uniqueId.find()) {
+            respond(exchange, 400, "Missing uniqueId");
+        } else if (devices.putIfAbsent(uniqueId.group(1), body) != null) {
+            respond(exchange, 400, "Duplicate entry '" + uniqueId.group(1) + "' for key 'tc_devices.uniqueid'");
+        } else {
+            respond(exchange, 200, body);
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public Map<String, String> getDevices() {
+        return devices;
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public void resetMaxInFlight() {
+        maxInFlight.set(0);
+    }
+
+    // Each client connection comes from its own port
+    public int getConnectionCount() {
+        return clientPorts.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,102 @@
+package com.idirtrack.vehicle_service.traccar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Import;
+
+import com.idirtrack.vehicle_service.config.WebClientConfig;
+import com.idirtrack.vehicle_service.traccar.request.TracCarDeviceRequest;
+
+import io.github.resilience4j.springboot3.bulkhead.autoconfigure.BulkheadAutoConfiguration;
+import io.github.resilience4j.springboot3.circuitbreaker.autoconfigure.CircuitBreakerAutoConfiguration;
+import io.github.resilience4j.springboot3.timelimiter.autoconfigure.TimeLimiterAutoConfiguration;
+
+class TracCarBulkRegistrationTest {
+
+    // The Spring Boot conversion service reads the durations like "30s"
+    private ApplicationContextRunner contextRunner(FakeTracCarServer tracCar, int maxConcurrency) {
+        return new ApplicationContextRunner()
+                .withInitializer(context -> context.getBeanFactory()
+                        .setConversionService(ApplicationConversionService.getSharedInstance()))
+                .withConfiguration(AutoConfigurations.of(CircuitBreakerAutoConfiguration.class,
+                        BulkheadAutoConfiguration.class, TimeLimiterAutoConfiguration.class))
+                .withUserConfiguration(TracCarTestConfig.class)
+                .withPropertyValues(
+                        "webclient.traccar.base-url=" + tracCar.getBaseUrl(),
+                        "webclient.traccar.max-connections=" + maxConcurrency,
+                        "traccar.bulk.max-concurrency=" + maxConcurrency);
+    }
+
+    @Test
+    void testCreateDevices_RegistersConcurrentlyOverPersistentConnections() throws Exception {
+        try (FakeTracCarServer tracCar = new FakeTracCarServer(Duration.ofMillis(50))) {
+            contextRunner(tracCar, 16).run(context -> {
+                TracCarService tracCarService = context.getBean(TracCarService.class);
+
+                long start = System.nanoTime();
+                Map<String, Boolean> created = tracCarService.createDevices(devices(400), Duration.ofSeconds(30));
+                Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+                assertEquals(400, created.size());
+                assertFalse(created.containsValue(false));
+                assertEquals(400, tracCar.getDevices().size());
+                // One by one, the 400 registrations would take at least 20 seconds
+                assertTrue(elapsed.compareTo(Duration.ofSeconds(10)) < 0, "Took " + elapsed);
+                // The registrations reuse the connections of the pool
+                assertTrue(tracCar.getConnectionCount() <= 16, tracCar.getConnectionCount() + " connections");
+            });
+        }
+    }
+
+    @Test
+    void testCreateDevices_ReplayTreatsExistingDevicesAsCreated() throws Exception {
+        try (FakeTracCarServer tracCar = new FakeTracCarServer(Duration.ZERO)) {
+            contextRunner(tracCar, 8).run(context -> {
+                TracCarService tracCarService = context.getBean(TracCarService.class);
+
+                tracCarService.createDevices(devices(50), Duration.ofSeconds(30));
+                Map<String, Boolean> replayed = tracCarService.createDevices(devices(100), Duration.ofSeconds(30));
+
+                assertFalse(replayed.containsValue(false));
+                assertEquals(100, tracCar.getDevices().size());
+                assertEquals(150, tracCar.getRequestCount());
+            });
+        }
+    }
+
+    @Test
+    void testCreateDevices_DevicesWaitingAtTheDeadlineAreNotCreated() throws Exception {
+        try (FakeTracCarServer tracCar = new FakeTracCarServer(Duration.ofMillis(500))) {
+            contextRunner(tracCar, 2).run(context -> {
+                TracCarService tracCarService = context.getBean(TracCarService.class);
+
+                Map<String, Boolean> created = tracCarService.createDevices(devices(10), Duration.ofMillis(800));
+
+                assertEquals(10, created.size());
+                assertTrue(created.containsValue(false));
+            });
+        }
+    }
+
+    private List<TracCarDeviceRequest> devices(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> TracCarDeviceRequest.of("client", "imei-" + i, "company", "AB-" + i))
+                .collect(Collectors.toList());
+    }
+
+    @Import({ WebClientConfig.class, TracCarService.class })
+    static class TracCarTestConfig {
+    }
+}
@@ -0,0 +1,116 @@
+package com.idirtrack.vehicle_service.traccar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Import;
+
+import com.idirtrack.vehicle_service.config.WebClientConfig;
+import com.idirtrack.vehicle_service.traccar.request.TracCarDeviceRequest;
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.resilience4j.springboot3.bulkhead.autoconfigure.BulkheadAutoConfiguration;
+import io.github.resilience4j.springboot3.circuitbreaker.autoconfigure.CircuitBreakerAutoConfiguration;
+import io.github.resilience4j.springboot3.timelimiter.autoconfigure.TimeLimiterAutoConfiguration;
+
+class TracCarServiceTest {
+
+    // Stub of TracCar, refusing the devices whose unique id is "taken"
+    private HttpServer tracCar;
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+
+    private ApplicationContextRunner contextRunner;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tracCar = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        tracCar.createContext("/api/devices", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            bodies.add(body);
+            exchange.sendResponseHeaders(body.contains("\"taken\"") ? 400 : 200, -1);
+            exchange.close();
+        });
+        tracCar.start();
+
+        // The Spring Boot conversion service reads the durations like "30s"
+        contextRunner = new ApplicationContextRunner()
+                .withInitializer(context -> context.getBeanFactory()
+                        .setConversionService(ApplicationConversionService.getSharedInstance()))
+                .withConfiguration(AutoConfigurations.of(CircuitBreakerAutoConfiguration.class,
+                        BulkheadAutoConfiguration.class, TimeLimiterAutoConfiguration.class))
+                .withUserConfiguration(TracCarTestConfig.class)
+                .withPropertyValues(
+                        "webclient.traccar.base-url=http://localhost:" + tracCar.getAddress().getPort(),
+                        "traccar.username=user",
+                        "traccar.password=secret",
+                        // As in the application.yml, the bulk registrations stay under the
+                        // bulkhead and the time limit leaves room to open the connections
+                        "traccar.bulk.max-concurrency=8",
+                        "resilience4j.timelimiter.instances.traccar.timeout-duration=12s");
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracCar.stop(0);
+    }
+
+    @Test
+    void testCreateDevice_PostsTheDeviceWithBasicAuth() {
+        contextRunner.run(context -> {
+            TracCarService tracCarService = context.getBean(TracCarService.class);
+
+            assertTrue(tracCarService.createDevice("client", "123456", "company", "AB-1"));
+            assertFalse(tracCarService.createDevice("client", "taken", "company", "AB-2"));
+
+            String credentials = Base64.getEncoder().encodeToString("user:secret".getBytes(StandardCharsets.UTF_8));
+            assertEquals("Basic " + credentials, authorizations.get(0));
+            assertTrue(bodies.get(0).contains("\"name\":\"client - company - AB-1\""));
+            assertTrue(bodies.get(0).contains("\"uniqueId\":\"123456\""));
+        });
+    }
+
+    @Test
+    void testCreateDevices_CreatesAllTheDevicesUntilTheDeadline() {
+        contextRunner.run(context -> {
+            TracCarService tracCarService = context.getBean(TracCarService.class);
+
+            List<TracCarDeviceRequest> devices = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                devices.add(TracCarDeviceRequest.of("client", "imei-" + i, "company", "AB-" + i));
+            }
+            devices.add(TracCarDeviceRequest.of("client", "taken", "company", "AB-50"));
+
+            Map<String, Boolean> created = tracCarService.createDevices(devices, Duration.ofSeconds(30));
+
+            assertEquals(51, created.size());
+            assertFalse(created.get("taken"));
+            created.entrySet().stream()
+                    .filter(entry -> !entry.getKey().equals("taken"))
+                    .forEach(entry -> assertTrue(entry.getValue()));
+            assertEquals(51, bodies.size());
+        });
+    }
+
+    @Import({ WebClientConfig.class, TracCarService.class })
+    static class TracCarTestConfig {
+    }
+}
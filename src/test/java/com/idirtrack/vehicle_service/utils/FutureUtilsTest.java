@@ -0,0 +1,54 @@
+package com.idirtrack.vehicle_service.utils;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+class FutureUtilsTest {
+
+    @Test
+    void testAwaitAll_WaitsForTheSlowestCallOnly() {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<Boolean>> calls = List.of(
+                    CompletableFuture.supplyAsync(() -> sleepThen(300, true), executor),
+                    CompletableFuture.supplyAsync(() -> sleepThen(300, true), executor),
+                    CompletableFuture.supplyAsync(() -> sleepThen(300, true), executor));
+
+            long start = System.nanoTime();
+            FutureUtils.awaitAll(calls, Duration.ofSeconds(5));
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 800);
+            calls.forEach(call -> assertTrue(call.isDone()));
+        }
+    }
+
+    @Test
+    void testAwaitAll_ReturnsAtTheDeadline() {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<Boolean> slow = CompletableFuture.supplyAsync(() -> sleepThen(2000, true), executor);
+            List<CompletableFuture<Boolean>> calls = List.of(
+                    CompletableFuture.failedFuture(new RuntimeException()),
+                    slow);
+
+            long start = System.nanoTime();
+            FutureUtils.awaitAll(calls, Duration.ofMillis(200));
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1000);
+            assertFalse(slow.isDone());
+        }
+    }
+
+    private boolean sleepThen(long millis, boolean result) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,216 @@
+package com.idirtrack.vehicle_service.vehicle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.boitier.Boitier;
+import com.idirtrack.vehicle_service.cache.CountCache;
+import com.idirtrack.vehicle_service.client.Client;
+import com.idirtrack.vehicle_service.client.ClientService;
+import com.idirtrack.vehicle_service.device.Device;
+import com.idirtrack.vehicle_service.outbox.StockStatusEvent;
+import com.idirtrack.vehicle_service.outbox.StockStatusEventRepository;
+import com.idirtrack.vehicle_service.outbox.StockStatusOutbox;
+import com.idirtrack.vehicle_service.sim.Sim;
+import com.idirtrack.vehicle_service.traccar.TracCarService;
+import com.idirtrack.vehicle_service.traccar.request.TracCarDeviceRequest;
+import com.idirtrack.vehicle_service.vehicle.https.VehicleBatchItemResponse;
+import com.idirtrack.vehicle_service.vehicle.https.VehicleRequest;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.cloud.config.enabled=false"
+})
+@Import({ VehicleBatchService.class, VehicleBatchWriter.class, CountCache.class, StockStatusOutbox.class })
+class VehicleBatchServiceTest {
+
+    @Autowired
+    private VehicleBatchService vehicleBatchService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private StockStatusEventRepository stockStatusEventRepository;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private ClientService clientService;
+    @MockBean
+    private TracCarService tracCarService;
+
+    private Client client;
+    private final Set<String> refusedImeis = new HashSet<>();
+
+    @BeforeEach
+    void setUp() {
+        client = entityManager.persist(Client.builder().clientMicroserviceId(7L).name("client").company("company").build());
+        entityManager.persist(Vehicle.builder().matricule("USED").type("truck").client(client).build());
+        when(clientService.getOrCreateClient(7L)).thenReturn(client);
+
+        // TracCar creates all the devices, except the refused ones
+        when(tracCarService.createDevices(anyList(), any())).thenAnswer(invocation -> {
+            List<TracCarDeviceRequest> devices = invocation.getArgument(0);
+            return devices.stream().collect(Collectors.toMap(TracCarDeviceRequest::getUniqueId,
+                    device -> !refusedImeis.contains(device.getUniqueId())));
+        });
+    }
+
+    @Test
+    void testCreateVehiclesBatch_ReportsEachVehicle() throws Exception {
+        Long first = persistBoitier("1");
+        Long second = persistBoitier("2");
+
+        BasicResponse response = vehicleBatchService.createVehiclesBatch(List.of(
+                request("NEW-1", first),
+                request("USED", second),
+                request("NEW-2", first),
+                request("NEW-3", 999L),
+                request("NEW-4", second)));
+
+        List<VehicleBatchItemResponse> results = (List<VehicleBatchItemResponse>) response.getContent();
+        assertEquals(HttpStatus.CREATED, results.get(0).getStatus());
+        assertNotNull(results.get(0).getVehicleId());
+        assertEquals(HttpStatus.CONFLICT, results.get(1).getStatus());
+        assertEquals(HttpStatus.CONFLICT, results.get(2).getStatus());
+        assertEquals(HttpStatus.NOT_FOUND, results.get(3).getStatus());
+        assertEquals(HttpStatus.CREATED, results.get(4).getStatus());
+
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals(results.get(0).getVehicleId(), entityManager.find(Boitier.class, first).getVehicle().getId());
+        assertEquals(results.get(4).getVehicleId(), entityManager.find(Boitier.class, second).getVehicle().getId());
+
+        // The device and the sim of each attached boitier wait in the outbox
+        List<StockStatusEvent> events = stockStatusEventRepository.findAll();
+        assertEquals(4, events.size());
+        events.forEach(event -> assertEquals("installed", event.getItemStatus()));
+    }
+
+    @Test
+    void testCreateVehiclesBatch_TracCarFailureOnlyFailsItsVehicle() throws Exception {
+        Long first = persistBoitier("3");
+        Long second = persistBoitier("4");
+        refusedImeis.add("imei-4");
+
+        BasicResponse response = vehicleBatchService.createVehiclesBatch(List.of(
+                request("NEW-5", first),
+                request("NEW-6", second)));
+
+        List<VehicleBatchItemResponse> results = (List<VehicleBatchItemResponse>) response.getContent();
+        assertEquals(HttpStatus.CREATED, results.get(0).getStatus());
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, results.get(1).getStatus());
+        assertEquals(2, stockStatusEventRepository.count());
+    }
+
+    @Test
+    void testCreateVehiclesBatch_BoitierAttachedMeanwhileOnlyFailsItsVehicle() throws Exception {
+        Long first = persistBoitier("5");
+        Long second = persistBoitier("6");
+        Long third = persistBoitier("7");
+        Long otherVehicleId = entityManager.persist(Vehicle.builder().matricule("OTHER").type("truck")
+                .client(client).build()).getId();
+
+        // Another request attaches a boitier of the second vehicle while the devices are saved in TracCar
+        when(tracCarService.createDevices(anyList(), any())).thenAnswer(invocation -> {
+            jdbcTemplate.update("UPDATE boitiers SET vehicle_id = ? WHERE id = ?", otherVehicleId, third);
+            List<TracCarDeviceRequest> devices = invocation.getArgument(0);
+            return devices.stream().collect(Collectors.toMap(TracCarDeviceRequest::getUniqueId, device -> true));
+        });
+
+        BasicResponse response = vehicleBatchService.createVehiclesBatch(List.of(
+                request("NEW-7", first),
+                VehicleRequest.builder()
+                        .matricule("NEW-8")
+                        .type("truck")
+                        .clientMicroserviceId(client.getClientMicroserviceId())
+                        .boitiersIds(List.of(second, third))
+                        .build()));
+
+        List<VehicleBatchItemResponse> results = (List<VehicleBatchItemResponse>) response.getContent();
+        assertEquals(HttpStatus.CREATED, results.get(0).getStatus());
+        assertEquals(HttpStatus.CONFLICT, results.get(1).getStatus());
+
+        // The second vehicle is undone with the boitier it got, the taken boitier is not reassigned
+        entityManager.clear();
+        assertEquals(results.get(0).getVehicleId(), entityManager.find(Boitier.class, first).getVehicle().getId());
+        assertNull(entityManager.find(Boitier.class, second).getVehicle());
+        assertEquals(otherVehicleId, entityManager.find(Boitier.class, third).getVehicle().getId());
+        assertFalse(vehicleRepository.existsByMatricule("NEW-8"));
+        assertEquals(2, stockStatusEventRepository.count());
+    }
+
+    @Test
+    void testCreateVehiclesBatch_MatriculeTakenMeanwhileOnlyFailsItsVehicle() throws Exception {
+        Long first = persistBoitier("8");
+        Long second = persistBoitier("9");
+
+        // Another request creates a vehicle with the second matricule while the devices are saved in TracCar
+        when(tracCarService.createDevices(anyList(), any())).thenAnswer(invocation -> {
+            jdbcTemplate.update("INSERT INTO vehicles (matricule, type, client_id) VALUES (?, ?, ?)",
+                    "NEW-10", "truck", client.getId());
+            List<TracCarDeviceRequest> devices = invocation.getArgument(0);
+            return devices.stream().collect(Collectors.toMap(TracCarDeviceRequest::getUniqueId, device -> true));
+        });
+
+        BasicResponse response = vehicleBatchService.createVehiclesBatch(List.of(
+                request("NEW-9", first),
+                request("NEW-10", second)));
+
+        List<VehicleBatchItemResponse> results = (List<VehicleBatchItemResponse>) response.getContent();
+        assertEquals(HttpStatus.CREATED, results.get(0).getStatus());
+        assertEquals(HttpStatus.CONFLICT, results.get(1).getStatus());
+        assertEquals("Vehicle already exists", results.get(1).getMessage());
+
+        // Only the boitier of the created vehicle is attached
+        entityManager.clear();
+        assertEquals(results.get(0).getVehicleId(), entityManager.find(Boitier.class, first).getVehicle().getId());
+        assertNull(entityManager.find(Boitier.class, second).getVehicle());
+        assertEquals(2, stockStatusEventRepository.count());
+    }
+
+    private VehicleRequest request(String matricule, Long boitierId) {
+        return VehicleRequest.builder()
+                .matricule(matricule)
+                .type("truck")
+                .clientMicroserviceId(client.getClientMicroserviceId())
+                .boitiersIds(List.of(boitierId))
+                .build();
+    }
+
+    // The suffix is also the stock microservice id of the device and the sim, which are unique
+    private Long persistBoitier(String suffix) {
+        Device device = entityManager.persist(Device.builder().imei("imei-" + suffix)
+                .deviceMicroserviceId(Long.valueOf(suffix)).build());
+        Sim sim = entityManager.persist(Sim.builder().phone("06" + suffix)
+                .simMicroserviceId(Long.valueOf(suffix)).build());
+        return entityManager.persist(Boitier.builder().device(device).sim(sim).build()).getId();
+    }
+}
@@ -0,0 +1,191 @@
+package com.idirtrack.vehicle_service.vehicle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.idirtrack.vehicle_service.VehicleServiceApplication;
+import com.idirtrack.vehicle_service.boitier.Boitier;
+import com.idirtrack.vehicle_service.boitier.BoitierRepository;
+import com.idirtrack.vehicle_service.client.Client;
+import com.idirtrack.vehicle_service.client.ClientRepository;
+import com.idirtrack.vehicle_service.device.Device;
+import com.idirtrack.vehicle_service.device.DeviceRepository;
+import com.idirtrack.vehicle_service.sim.Sim;
+import com.idirtrack.vehicle_service.sim.SimRepository;
+import com.idirtrack.vehicle_service.traccar.FakeTracCarServer;
+
+/**
+ * Benchmark of the vehicle creation endpoint, on platform threads then on
+ * virtual threads
+ *
+ * The service runs on H2 in front of a TracCar stub answering after 200ms, the
+ * slow downstream call of the vehicle creation, and receives many concurrent
+ * creations. On platform threads the requests handled at once are capped by the
+ * Tomcat threads, on virtual threads they are only capped by the downstream
+ * pools and bulkheads. Run it with
+ * {@code mvn test -Dtest=VehicleCreateBenchmark -Dbenchmark=true}.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class VehicleCreateBenchmark {
+
+    private static final int TOMCAT_THREADS = 50;
+    private static final int WARM_UP_REQUESTS = 50;
+    private static final int REQUESTS = 500;
+    private static final Duration TRACCAR_LATENCY = Duration.ofMillis(200);
+
+    @Test
+    void benchmarkPlatformVersusVirtualThreads() throws Exception {
+        try (FakeTracCarServer tracCar = new FakeTracCarServer(TRACCAR_LATENCY)) {
+            Result platform = run(tracCar, false);
+            Result virtual = run(tracCar, true);
+
+            System.out.printf("%-10s %12s %12s %10s %10s %10s%n",
+                    "threads", "requests/s", "in flight", "p50 ms", "p99 ms", "errors");
+            for (Result result : List.of(platform, virtual)) {
+                System.out.printf("%-10s %12.0f %12d %10d %10d %10d%n", result.mode(), result.throughput(),
+                        result.maxInFlight(), result.p50Millis(), result.p99Millis(), result.errors());
+            }
+
+            assertEquals(0, platform.errors());
+            assertEquals(0, virtual.errors());
+            // The Tomcat threads cap the platform mode, not the virtual mode
+            assertTrue(platform.maxInFlight() <= TOMCAT_THREADS);
+            assertTrue(virtual.maxInFlight() > 2 * TOMCAT_THREADS);
+        }
+    }
+
+    private Result run(FakeTracCarServer tracCar, boolean virtualThreads) throws Exception {
+        String mode = virtualThreads ? "virtual" : "platform";
+        // The arguments of the command line override the application.yml
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(VehicleServiceApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark-" + mode + ";DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.hikari.maximum-pool-size=20",
+                        "--spring.jpa.database=h2",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.cloud.config.enabled=false",
+                        "--eureka.client.enabled=false",
+                        "--stock-status.outbox.poll-interval-ms=600000",
+                        // The downstream limits are raised, so only the threads cap the requests
+                        "--webclient.traccar.base-url=" + tracCar.getBaseUrl(),
+                        "--webclient.traccar.max-connections=1000",
+                        "--webclient.traccar.pending-acquire-max-count=10000",
+                        "--resilience4j.bulkhead.instances.traccar.max-concurrent-calls=1000",
+                        "--resilience4j.timelimiter.instances.traccar.timeout-duration=30s")) {
+            List<Long> boitierIds = createBoitiers(context, mode, WARM_UP_REQUESTS + REQUESTS);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                HttpClient httpClient = HttpClient.newBuilder()
+                        .executor(clients)
+                        .connectTimeout(Duration.ofSeconds(10))
+                        .build();
+
+                // Warm up the service before the measure
+                send(httpClient, port, mode, boitierIds.subList(0, WARM_UP_REQUESTS), "warm-up");
+                tracCar.resetMaxInFlight();
+
+                long start = System.nanoTime();
+                List<Long> latencies = new ArrayList<>();
+                int errors = send(httpClient, port, mode, boitierIds.subList(WARM_UP_REQUESTS, boitierIds.size()),
+                        "measure", latencies);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                latencies.sort(null);
+                return new Result(mode, REQUESTS / seconds, tracCar.getMaxInFlight(),
+                        latencies.get(latencies.size() / 2), latencies.get(latencies.size() * 99 / 100), errors);
+            }
+        }
+    }
+
+    private int send(HttpClient httpClient, int port, String mode, List<Long> boitierIds, String phase)
+            throws Exception {
+        return send(httpClient, port, mode, boitierIds, phase, new ArrayList<>());
+    }
+
+    // Send one vehicle creation per boitier, all at once, and count the failures
+    private int send(HttpClient httpClient, int port, String mode, List<Long> boitierIds, String phase,
+            List<Long> latencies) throws Exception {
+        List<CompletableFuture<Long>> calls = new ArrayList<>();
+        for (Long boitierId : boitierIds) {
+            String body = String.format(
+                    "{\"matricule\":\"%s-%s-%d\",\"type\":\"truck\",\"clientMicroserviceId\":1,\"boitiersIds\":[%d]}",
+                    mode, phase, boitierId, boitierId);
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/vehicle-api/vehicles/"))
+                    .header("Content-Type", "application/json")
+                    .timeout(Duration.ofSeconds(60))
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            long start = System.nanoTime();
+            calls.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenApply(response -> response.statusCode() == 201 ? (System.nanoTime() - start) / 1_000_000 : -1L));
+        }
+
+        int errors = 0;
+        for (CompletableFuture<Long> call : calls) {
+            long latency = call.exceptionally(e -> -1L).join();
+            if (latency < 0) {
+                errors++;
+            } else {
+                latencies.add(latency);
+            }
+        }
+        return errors;
+    }
+
+    // The client of the vehicles and one free boitier per vehicle
+    private List<Long> createBoitiers(ConfigurableApplicationContext context, String mode, int count) {
+        context.getBean(ClientRepository.class).save(Client.builder()
+                .clientMicroserviceId(1L)
+                .name("client")
+                .company("company")
+                .build());
+
+        DeviceRepository deviceRepository = context.getBean(DeviceRepository.class);
+        SimRepository simRepository = context.getBean(SimRepository.class);
+        BoitierRepository boitierRepository = context.getBean(BoitierRepository.class);
+        List<Long> boitierIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Device device = deviceRepository.save(Device.builder()
+                    .imei(mode + "-imei-" + i)
+                    .deviceMicroserviceId((long) i)
+                    .build());
+            Sim sim = simRepository.save(Sim.builder()
+                    .phone(mode + "-phone-" + i)
+                    .simMicroserviceId((long) i)
+                    .build());
+            boitierIds.add(boitierRepository.save(Boitier.builder().device(device).sim(sim).build()).getId());
+        }
+        return boitierIds;
+    }
+
+    private record Result(String mode, double throughput, int maxInFlight, long p50Millis, long p99Millis,
+            int errors) {
+    }
+}
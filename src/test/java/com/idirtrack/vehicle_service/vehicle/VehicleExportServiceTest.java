@@ -0,0 +1,117 @@
+package com.idirtrack.vehicle_service.vehicle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idirtrack.vehicle_service.boitier.Boitier;
+import com.idirtrack.vehicle_service.client.Client;
+import com.idirtrack.vehicle_service.device.Device;
+import com.idirtrack.vehicle_service.sim.Sim;
+import com.idirtrack.vehicle_service.subscription.Subscription;
+import com.idirtrack.vehicle_service.vehicle.https.VehicleResponse;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.cloud.config.enabled=false",
+        "vehicle.export.fetch-size=2"
+})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import(VehicleExportService.class)
+class VehicleExportServiceTest {
+
+    @Autowired
+    private VehicleExportService vehicleExportService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void testExportVehicles_OneLinePerVehicleWithItsBoitiers() throws Exception {
+        persistVehicleWithBoitiers("A-1", 3);
+        persistVehicleWithBoitiers("A-2", 0);
+        persistVehicleWithBoitiers("A-3", 1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        vehicleExportService.exportVehicles(out);
+
+        List<VehicleResponse> vehicles = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            vehicles.add(objectMapper.readValue(line, VehicleResponse.class));
+        }
+        assertEquals(List.of("A-1", "A-2", "A-3"), vehicles.stream().map(v -> v.getVehicle().getMatricule()).toList());
+        assertEquals(List.of(3, 0, 1), vehicles.stream().map(v -> v.getBoitiersList().size()).toList());
+        assertEquals("company", vehicles.get(0).getClient().getCompany());
+        assertEquals("A-1-2", vehicles.get(0).getBoitiersList().get(2).getDevice().getImei());
+        // Only the latest subscription of each boitier
+        assertEquals(Date.valueOf("2026-01-01"), vehicles.get(2).getBoitiersList().get(0).getSubscription().getEndDate());
+    }
+
+    @Test
+    void testExportVehicles_WritesEachVehicleAsSoonAsItIsRead() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            persistVehicleWithBoitiers("B-" + i, 2);
+        }
+
+        // Record the size of the output at each flush
+        List<Integer> flushes = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                flushes.add(size());
+            }
+        };
+        vehicleExportService.exportVehicles(out);
+
+        // One flush per vehicle, each one with one more line
+        assertEquals(5, flushes.size());
+        for (int i = 1; i < flushes.size(); i++) {
+            assertTrue(flushes.get(i) > flushes.get(i - 1));
+        }
+        assertTrue(out.toString(StandardCharsets.UTF_8).endsWith("\n"));
+    }
+
+    @Test
+    void testExportVehicles_EmptyFleetWritesNothing() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        vehicleExportService.exportVehicles(out);
+
+        assertEquals(0, out.size());
+    }
+
+    private void persistVehicleWithBoitiers(String matricule, int boitiersCount) {
+        Client client = entityManager.persist(Client.builder().name("client").company("company").build());
+        Vehicle vehicle = entityManager.persist(Vehicle.builder().matricule(matricule).type("truck").client(client).build());
+
+        for (int i = 0; i < boitiersCount; i++) {
+            Device device = entityManager.persist(Device.builder().imei(matricule + "-" + i).type("F9G").build());
+            Sim sim = entityManager.persist(Sim.builder().phone("06" + i).build());
+            Boitier boitier = entityManager.persist(Boitier.builder().vehicle(vehicle).device(device).sim(sim).build());
+            entityManager.persist(Subscription.builder()
+                    .startDate(Date.valueOf("2024-01-01")).endDate(Date.valueOf("2025-01-01")).boitier(boitier).build());
+            entityManager.persist(Subscription.builder()
+                    .startDate(Date.valueOf("2025-01-01")).endDate(Date.valueOf("2026-01-01")).boitier(boitier).build());
+        }
+
+        // The export reads the rows with JDBC
+        entityManager.flush();
+    }
+}
@@ -0,0 +1,324 @@
+package com.idirtrack.vehicle_service.vehicle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.idirtrack.vehicle_service.basic.BasicException;
+import com.idirtrack.vehicle_service.basic.BasicResponse;
+import com.idirtrack.vehicle_service.boitier.Boitier;
+import com.idirtrack.vehicle_service.boitier.BoitierService;
+import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
+import com.idirtrack.vehicle_service.cache.CountCache;
+import com.idirtrack.vehicle_service.client.Client;
+import com.idirtrack.vehicle_service.client.ClientService;
+import com.idirtrack.vehicle_service.device.Device;
+import com.idirtrack.vehicle_service.device.DeviceService;
+import com.idirtrack.vehicle_service.outbox.StockStatusEventRepository;
+import com.idirtrack.vehicle_service.outbox.StockStatusOutbox;
+import com.idirtrack.vehicle_service.sim.Sim;
+import com.idirtrack.vehicle_service.sim.SimService;
+import com.idirtrack.vehicle_service.subscription.Subscription;
+import com.idirtrack.vehicle_service.traccar.TracCarService;
+import com.idirtrack.vehicle_service.vehicle.https.VehicleRequest;
+import com.idirtrack.vehicle_service.vehicle.https.VehicleResponse;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.cloud.config.enabled=false"
+})
+@Import({ VehicleService.class, CountCache.class, StockStatusOutbox.class })
+class VehicleQueryCountTest {
+
+    @Autowired
+    private VehicleService vehicleService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CountCache countCache;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+    @Autowired
+    private StockStatusEventRepository stockStatusEventRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // The stock microservice ids of the persisted devices and sims, unique
+    private long stockIds;
+
+    @MockBean
+    private ClientService clientService;
+    @MockBean
+    private BoitierService boitierService;
+    @MockBean
+    private TracCarService tracCarService;
+    @MockBean
+    private DeviceService deviceService;
+    @MockBean
+    private SimService simService;
+
+    @BeforeEach
+    void setUp() {
+        countCache.invalidate(CountCache.VEHICLES);
+    }
+
+    @Test
+    void testGetVehicleBoities_StatementCountDoesNotGrowWithBoitiers() throws Exception {
+        assertEquals(2, countStatements(persistVehicleWithBoitiers("A-1", 1)));
+        assertEquals(2, countStatements(persistVehicleWithBoitiers("A-40", 40)));
+    }
+
+    @Test
+    void testGetVehicleBoities_ReturnsLatestSubscription() throws Exception {
+        Long vehicleId = persistVehicleWithBoitiers("B-1", 1);
+
+        BasicResponse response = vehicleService.getVehicleBoities(vehicleId);
+
+        BoitierDTO boitierDTO = ((List<BoitierDTO>) response.getContent()).get(0);
+        assertNotNull(boitierDTO.getSubscription());
+        assertEquals(Date.valueOf("2025-01-01"), boitierDTO.getSubscription().getStartDate());
+    }
+
+    @Test
+    void testGetVehicleBoities_LatestSubscriptionIsTheOneEndingLast() throws Exception {
+        Long vehicleId = persistVehicleWithBoitiers("B-2", 1);
+        Boitier boitier = vehicleRepository.findWithBoitiersById(vehicleId).orElseThrow().getBoitiers().get(0);
+        // A subscription recorded after the renewal, for an older period
+        entityManager.persist(Subscription.builder()
+                .startDate(Date.valueOf("2023-01-01")).endDate(Date.valueOf("2024-01-01")).boitier(boitier).build());
+        entityManager.flush();
+        entityManager.clear();
+
+        BasicResponse response = vehicleService.getVehicleBoities(vehicleId);
+
+        BoitierDTO boitierDTO = ((List<BoitierDTO>) response.getContent()).get(0);
+        assertEquals(Date.valueOf("2026-01-01"), boitierDTO.getSubscription().getEndDate());
+    }
+
+    @Test
+    void testGetAllVehicles_ProjectsPageWithoutPerRowQueries() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            persistVehicleWithBoitiers("C-" + i, 0);
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        BasicResponse response = vehicleService.getAllVehicles(1, 5, true);
+
+        List<VehicleResponse> vehicles = (List<VehicleResponse>) response.getContent();
+        assertEquals(5, vehicles.size());
+        assertEquals("C-4", vehicles.get(0).getVehicle().getMatricule());
+        assertEquals("company", vehicles.get(0).getClient().getCompany());
+        assertEquals(1, response.getMetadata().getTotalPages());
+        // One select for the page and one for the total count
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        // The total count is cached for the next pages
+        statistics.clear();
+        vehicleService.getAllVehicles(1, 5, true);
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void testGetAllVehicles_WithoutTotalSkipsCountQuery() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            persistVehicleWithBoitiers("E-" + i, 0);
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        BasicResponse response = vehicleService.getAllVehicles(1, 2, false);
+
+        assertNull(response.getMetadata().getTotalPages());
+        assertTrue(response.getMetadata().getHasNext());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void testGetAllVehiclesAfter_SeeksWithoutCountQuery() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            persistVehicleWithBoitiers("D-" + i, 0);
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        BasicResponse first = vehicleService.getAllVehiclesAfter("", 3);
+        BasicResponse second = vehicleService.getAllVehiclesAfter(first.getMetadata().getNextCursor(), 3);
+
+        assertEquals(List.of("D-4", "D-3", "D-2"), matricules(first));
+        assertEquals(List.of("D-1", "D-0"), matricules(second));
+        assertNull(second.getMetadata().getNextCursor());
+        // One select per slice, no count query
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void testGetAllVehiclesAfter_RejectsInvalidSize() throws Exception {
+        persistVehicleWithBoitiers("E-1", 0);
+
+        for (int size : new int[] { 0, -1, 1001, Integer.MAX_VALUE }) {
+            BasicException exception = assertThrows(BasicException.class,
+                    () -> vehicleService.getAllVehiclesAfter("", size));
+            assertEquals(HttpStatus.BAD_REQUEST, exception.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    void testCreateNewVehicle_StatementCountDoesNotGrowWithBoitiers() throws Exception {
+        Client client = entityManager.persist(Client.builder().name("client").company("company").build());
+        when(clientService.getOrCreateClient(1L)).thenReturn(client);
+
+        assertEquals(countCreateStatements("F-1", persistFreeBoitiers("F-1", 1)),
+                countCreateStatements("F-40", persistFreeBoitiers("F-40", 40)));
+    }
+
+    @Test
+    void testCreateNewVehicle_RejectsMissingAndAttachedBoitiers() throws Exception {
+        Client client = entityManager.persist(Client.builder().name("client").company("company").build());
+        when(clientService.getOrCreateClient(1L)).thenReturn(client);
+        List<Long> free = persistFreeBoitiers("G-1", 2);
+        Long vehicleId = persistVehicleWithBoitiers("G-2", 1);
+        Long attached = vehicleRepository.findWithBoitiersById(vehicleId).orElseThrow().getBoitiers().get(0).getId();
+
+        BasicException missing = assertThrows(BasicException.class, () -> vehicleService.createNewVehicle(
+                vehicleRequest("G-3", List.of(free.get(0), -1L))));
+        BasicException conflict = assertThrows(BasicException.class, () -> vehicleService.createNewVehicle(
+                vehicleRequest("G-3", List.of(free.get(0), attached, free.get(1)))));
+
+        assertEquals(HttpStatus.NOT_FOUND, missing.getResponse().getStatus());
+        assertEquals(HttpStatus.CONFLICT, conflict.getResponse().getStatus());
+        assertEquals("Boitier with the phone 060 and device IMEI G-2-0 already attached to a vehicle",
+                conflict.getResponse().getMessage());
+        assertFalse(vehicleRepository.existsByMatricule("G-3"));
+        verify(tracCarService, never()).createDevices(any(), any());
+    }
+
+    @Test
+    void testCreateNewVehicle_BoitierAttachedMeanwhileIsNotTaken() throws Exception {
+        Client client = entityManager.persist(Client.builder().name("client").company("company").build());
+        when(clientService.getOrCreateClient(1L)).thenReturn(client);
+        List<Long> boitierIds = persistFreeBoitiers("H-1", 2);
+        Long otherVehicleId = persistVehicleWithBoitiers("H-2", 0);
+
+        // Another request attaches one of the boitiers while the devices are saved in TracCar
+        when(tracCarService.createDevices(any(), any())).thenAnswer(invocation -> {
+            jdbcTemplate.update("UPDATE boitiers SET vehicle_id = ? WHERE id = ?", otherVehicleId, boitierIds.get(1));
+            return Map.of();
+        });
+
+        BasicException exception = assertThrows(BasicException.class,
+                () -> vehicleService.createNewVehicle(vehicleRequest("H-3", boitierIds)));
+
+        assertEquals(HttpStatus.CONFLICT, exception.getResponse().getStatus());
+        assertEquals(otherVehicleId, jdbcTemplate.queryForObject(
+                "SELECT vehicle_id FROM boitiers WHERE id = ?", Long.class, boitierIds.get(1)));
+        assertEquals(0, stockStatusEventRepository.count());
+    }
+
+    private long countCreateStatements(String matricule, List<Long> boitierIds) throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        BasicResponse response = vehicleService.createNewVehicle(vehicleRequest(matricule, boitierIds));
+        assertEquals(HttpStatus.CREATED, response.getStatus());
+        long statements = statistics.getPrepareStatementCount();
+
+        // All the boitiers are attached and their devices and sims installed
+        assertEquals(boitierIds.size(), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM boitiers b "
+                + "JOIN vehicles v ON v.id = b.vehicle_id WHERE v.matricule = ?", Integer.class, matricule));
+        return statements;
+    }
+
+    private VehicleRequest vehicleRequest(String matricule, List<Long> boitierIds) {
+        return VehicleRequest.builder()
+                .matricule(matricule)
+                .type("truck")
+                .clientMicroserviceId(1L)
+                .boitiersIds(boitierIds)
+                .build();
+    }
+
+    private List<Long> persistFreeBoitiers(String prefix, int boitiersCount) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < boitiersCount; i++) {
+            long stockId = ++stockIds;
+            Device device = entityManager.persist(Device.builder().imei(prefix + "-" + i).deviceMicroserviceId(stockId).build());
+            Sim sim = entityManager.persist(Sim.builder().phone("07" + i).simMicroserviceId(stockId).build());
+            ids.add(entityManager.persist(Boitier.builder().device(device).sim(sim).build()).getId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return ids;
+    }
+
+    private List<String> matricules(BasicResponse response) {
+        return ((List<VehicleResponse>) response.getContent()).stream()
+                .map(vehicle -> vehicle.getVehicle().getMatricule())
+                .toList();
+    }
+
+    private long countStatements(Long vehicleId) throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        BasicResponse response = vehicleService.getVehicleBoities(vehicleId);
+        ((List<BoitierDTO>) response.getContent()).forEach(boitier -> assertNotNull(boitier.getSubscription()));
+
+        return statistics.getPrepareStatementCount();
+    }
+
+    private Long persistVehicleWithBoitiers(String matricule, int boitiersCount) {
+        Client client = entityManager.persist(Client.builder().name("client").company("company").build());
+        Vehicle vehicle = entityManager.persist(Vehicle.builder().matricule(matricule).type("truck").client(client).build());
+
+        for (int i = 0; i < boitiersCount; i++) {
+            Device device = entityManager.persist(Device.builder().imei(matricule + "-" + i).type("F9G").build());
+            Sim sim = entityManager.persist(Sim.builder().phone("06" + i).build());
+            Boitier boitier = entityManager.persist(Boitier.builder().vehicle(vehicle).device(device).sim(sim).build());
+            entityManager.persist(Subscription.builder()
+                    .startDate(Date.valueOf("2024-01-01")).endDate(Date.valueOf("2025-01-01")).boitier(boitier).build());
+            entityManager.persist(Subscription.builder()
+                    .startDate(Date.valueOf("2025-01-01")).endDate(Date.valueOf("2026-01-01")).boitier(boitier).build());
+        }
+
+        // Start the read from an empty persistence context
+        entityManager.flush();
+        entityManager.clear();
+        return vehicle.getId();
+    }
+}
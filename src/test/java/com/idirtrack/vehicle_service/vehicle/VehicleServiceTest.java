@@ -28,6 +28,7 @@ import com.idirtrack.vehicle_service.boitier.dto.BoitierDTO;
 import com.idirtrack.vehicle_service.device.Device;
 import com.idirtrack.vehicle_service.sim.Sim;
 import com.idirtrack.vehicle_service.subscription.Subscription;
+import com.idirtrack.vehicle_service.subscription.SubscriptionRepository;
 
 import io.github.cdimascio.dotenv.Dotenv;
 
@@ -38,6 +39,9 @@ class VehicleServiceTest {
     @Mock
     private VehicleRepository vehicleRepository;
 
+    @Mock
+    private SubscriptionRepository subscriptionRepository;
+
     @InjectMocks
     private VehicleService vehicleService; // Replace with the actual name of your service class
 
@@ -71,6 +75,7 @@ class VehicleServiceTest {
         // Create Boitier Mock Object
         mockBoitier = Boitier.builder().id(1L).device(mockDevice).sim(mockSim)
                 .subscriptions(Arrays.asList(mockSubscription)).build();
+        mockSubscription.setBoitier(mockBoitier);
 
         // Create Vehicle Mock Object
         mockVehicle = Vehicle.builder().id(1L).boitiers(Arrays.asList(mockBoitier)).build();
@@ -79,7 +84,8 @@ class VehicleServiceTest {
     @Test
     void testGetVehicleBoities_Success() throws BasicException {
         // Arrange
-        when(vehicleRepository.findById(1L)).thenReturn(Optional.of(mockVehicle));
+        when(vehicleRepository.findWithBoitiersById(1L)).thenReturn(Optional.of(mockVehicle));
+        when(subscriptionRepository.findLatestByBoitierIds(List.of(1L))).thenReturn(List.of(mockSubscription));
 
         // Act
         BasicResponse response = vehicleService.getVehicleBoities(1L);